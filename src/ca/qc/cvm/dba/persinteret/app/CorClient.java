@@ -1,25 +1,30 @@
 package ca.qc.cvm.dba.persinteret.app;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 
-import javax.imageio.ImageIO;
-
 import ca.qc.cvm.dba.correctionserver.lib.BaseCorClient;
 import ca.qc.cvm.dba.persinteret.dao.PersonDAO;
+import ca.qc.cvm.dba.persinteret.dao.ProgressListener;
 import ca.qc.cvm.dba.persinteret.entity.Person;
 
 public class CorClient extends BaseCorClient  {
 	
+	private ProgressListener listener;
+	
 	public CorClient() {
 	}
 	
+	/**
+	 * @param listener reoit l'avancement de l'importation
+	 */
+	public CorClient(ProgressListener listener) {
+		this.listener = listener;
+	}
+	
 	@Override
 	protected void executeTests(final List<String> res, List<String> info) {
 		long count = -1;
@@ -53,6 +58,7 @@ public class CorClient extends BaseCorClient  {
 		String f1 = "";
 		String f2 = "";
 		String f3 = "";
+		List<Person> imported = new ArrayList<Person>();
 		
 		for (String line : info) {
 			if (line.startsWith("RUN;")) {
@@ -75,13 +81,8 @@ public class CorClient extends BaseCorClient  {
 	
 					
 					byte[] imageInByte = null;
-					BufferedImage image;
 					try {
-						File f = new File(p4);
-						image = ImageIO.read(f);
-						ByteArrayOutputStream b =new ByteArrayOutputStream();
-						ImageIO.write(image, "jpg", b );
-						imageInByte = b.toByteArray();
+						imageInByte = ImageIngest.getDefault().ingest(new File(p4));
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
@@ -93,11 +94,13 @@ public class CorClient extends BaseCorClient  {
 					
 					
 					Person p = new Person(p1, p2, p3, p5, p6, imageInByte);
-					PersonDAO.save(p);
+					imported.add(p);
 				}
 			}
 		}
 		
+		PersonDAO.saveAll(imported.iterator(), PersonDAO.DEFAULT_BATCH_SIZE, listener);
+		
 		count = -1;
 		try {
 			count = PersonDAO.getPeopleCount();
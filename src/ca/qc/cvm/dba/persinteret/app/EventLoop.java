@@ -0,0 +1,212 @@
+package ca.qc.cvm.dba.persinteret.app;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import ca.qc.cvm.dba.persinteret.event.CommonEvent;
+
+/**
+ * File des événements de l'application, traités un à la fois (dans l'ordre d'arrivée)
+ * par un seul fil de longue durée, virtuel si la JVM le permet.
+ *
+ * - la file est bornée : au-delà de capacity événements en attente, offer refuse l'événement
+ * - un événement qui a la même clé qu'un autre encore en attente (voir CommonEvent.getCoalesceKey) le remplace :
+ *   l'ancien est abandonné et le plus récent est traité, à sa place dans l'ordre d'arrivée
+ * - onIdle est appelé chaque fois que la file se vide, ce qui permet de regrouper les notifications
+ * - la profondeur de la file et le délai entre l'ajout d'un événement et la fin de son traitement sont mesurés
+ */
+public class EventLoop {
+	private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+	private final ConcurrentHashMap<Object, Entry> pending = new ConcurrentHashMap<Object, Entry>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final int capacity;
+	private final Consumer<CommonEvent> handler;
+	private final Runnable onIdle;
+	private final Thread worker;
+
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	private static class Entry {
+		final CommonEvent event;
+		final Object key;
+		final long enqueuedAt = System.nanoTime();
+		// Pris soit par le fil de traitement, soit par un événement plus récent qui le remplace
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		Entry(CommonEvent event) {
+			this.event = event;
+			this.key = event.getCoalesceKey();
+		}
+	}
+
+	/**
+	 * @param name nom du fil de traitement
+	 * @param capacity nombre maximal d'événements en attente
+	 * @param handler traitement d'un événement
+	 * @param onIdle appelé lorsque la file est vide après un traitement, peut être null
+	 */
+	public EventLoop(String name, int capacity, Consumer<CommonEvent> handler, Runnable onIdle) {
+		this.capacity = capacity;
+		this.handler = handler;
+		this.onIdle = onIdle;
+		this.worker = newThread(this::loop, name);
+		this.worker.start();
+	}
+
+	/**
+	 * Ajoute un événement sans bloquer l'appelant
+	 *
+	 * @return false si la file est pleine, true sinon (y compris si l'événement en a remplacé un autre)
+	 */
+	public boolean offer(CommonEvent event) {
+		Entry entry = new Entry(event);
+		Entry previous = entry.key != null ? pending.put(entry.key, entry) : null;
+
+		// L'ancien événement n'a pas encore été pris : le nouveau prend sa place dans la file (et dans la capacité)
+		if (previous != null && previous.claimed.compareAndSet(false, true)) {
+			coalesced.incrementAndGet();
+			queue.offer(entry);
+			LockSupport.unpark(worker);
+			return true;
+		}
+
+		int size = depth.incrementAndGet();
+
+		if (size > capacity) {
+			depth.decrementAndGet();
+
+			if (entry.key != null) {
+				pending.remove(entry.key, entry);
+			}
+
+			rejected.incrementAndGet();
+			return false;
+		}
+
+		maxDepth.accumulateAndGet(size, Math::max);
+		queue.offer(entry);
+		LockSupport.unpark(worker);
+
+		return true;
+	}
+
+	private void loop() {
+		while (true) {
+			Entry entry = queue.poll();
+
+			if (entry == null) {
+				LockSupport.park(this);
+				continue;
+			}
+
+			// Remplacé par un événement plus récent, qui a gardé sa place dans depth
+			if (!entry.claimed.compareAndSet(false, true)) {
+				continue;
+			}
+
+			depth.decrementAndGet();
+
+			// Retiré avant le traitement : un événement de même clé ajouté pendant celui-ci sera traité à son tour
+			if (entry.key != null) {
+				pending.remove(entry.key, entry);
+			}
+
+			try {
+				handler.accept(entry.event);
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			long latency = System.nanoTime() - entry.enqueuedAt;
+			processed.incrementAndGet();
+			totalLatency.addAndGet(latency);
+			maxLatency.accumulateAndGet(latency, Math::max);
+
+			if (onIdle != null && queue.isEmpty()) {
+				try {
+					onIdle.run();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fil virtuel (Java 21+) si possible, sinon un fil démon ordinaire
+	 */
+	private static Thread newThread(Runnable task, String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+			Method unstarted = builderClass.getMethod("unstarted", Runnable.class);
+
+			return (Thread)unstarted.invoke(builder, task);
+		}
+		catch (ReflectiveOperationException e) {
+			Thread thread = new Thread(task, name);
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+
+	/**
+	 * @return nombre d'événements en attente
+	 */
+	public int getDepth() {
+		return depth.get();
+	}
+
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return délai moyen entre l'ajout d'un événement et la fin de son traitement, en millisecondes
+	 */
+	public double getAverageLatency() {
+		long count = processed.get();
+
+		return count == 0 ? 0 : totalLatency.get() / 1e6 / count;
+	}
+
+	/**
+	 * @return plus long délai observé, en millisecondes
+	 */
+	public double getMaxLatency() {
+		return maxLatency.get() / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d en attente (max %d), %d traités, %d regroupés, %d refusés, %.1f ms en moyenne (max %.1f ms)",
+				getDepth(), getMaxDepth(), getProcessed(), getCoalesced(), getRejected(), getAverageLatency(), getMaxLatency());
+	}
+}
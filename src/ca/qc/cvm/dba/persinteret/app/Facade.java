@@ -3,23 +3,47 @@ package ca.qc.cvm.dba.persinteret.app;
 import java.beans.PropertyChangeListener;
 import java.util.List;
 import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import ca.qc.cvm.dba.persinteret.dao.PersonDAO;
+import ca.qc.cvm.dba.persinteret.entity.Dashboard;
+import ca.qc.cvm.dba.persinteret.entity.ImageMode;
+import ca.qc.cvm.dba.persinteret.entity.PeoplePage;
 import ca.qc.cvm.dba.persinteret.entity.Person;
 import ca.qc.cvm.dba.persinteret.event.CommonEvent;
 
+
 /**
  * Cette classe est l'intermdiaire entre la logique et la vue
  * Entre les panel et le MngApplication. C'est le point d'entre de la vue
  * vers la logique
  */
 public class Facade {
+	private static final int IO_THREADS = Integer.getInteger("persinteret.io.threads", 4);
+	
 	private static Facade instance;
 	
 	private MngApplication app;
+	private ExecutorService ioExecutor;
 	
 	private Facade() {
 		app = new MngApplication();
+		ioExecutor = Executors.newFixedThreadPool(IO_THREADS, r -> {
+			Thread thread = new Thread(r, "facade-io");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Excute une lecture sur les fils d'entre/sortie, jamais sur celui de Swing.
+	 * Le rsultat doit tre affich avec SwingUtilities.invokeLater.
+	 */
+	private <T> CompletableFuture<T> async(Supplier<T> query) {
+		return CompletableFuture.supplyAsync(query, ioExecutor);
 	}
 	
 	public static Facade getInstance() {
@@ -30,9 +54,13 @@ public class Facade {
 		return instance;
 	}
 	
-	public void processEvent(CommonEvent event) {
-		app.addEvent(event);
-        new Thread(app).start();
+	/**
+	 * L'vnement est trait plus tard, par la file d'vnements de l'application
+	 * 
+	 * @return false si l'application est trop occupe pour l'accepter
+	 */
+	public boolean processEvent(CommonEvent event) {
+		return app.addEvent(event);
 	}
 	
 	public void addObserverClass( PropertyChangeListener pcl) {
@@ -43,6 +71,25 @@ public class Facade {
 		return app.getPeopleList(filterText, withImage, limit);
 	}
 	
+	public CompletableFuture<List<Person>> getPeopleListAsync(String filterText, boolean withImage, int limit) {
+		return async(() -> getPeopleList(filterText, withImage, limit));
+	}
+	
+	public PeoplePage getPeopleListAfter(String lastName, String lastId, String filterText, ImageMode imageMode, int pageSize) {
+		return app.getPeopleListAfter(lastName, lastId, filterText, imageMode, pageSize);
+	}
+	
+	public CompletableFuture<PeoplePage> getPeopleListAfterAsync(String lastName, String lastId, String filterText, ImageMode imageMode, int pageSize) {
+		return async(() -> getPeopleListAfter(lastName, lastId, filterText, imageMode, pageSize));
+	}
+	
+	/**
+	 * Charge la photo d'une personne (voir Person.getImageData) sans bloquer l'appelant
+	 */
+	public CompletableFuture<byte[]> getImageDataAsync(Person person) {
+		return async(person::getImageData);
+	}
+	
 	public Person getCurrentPerson() {
 		return app.getCurrentPerson();
 	}
@@ -67,9 +114,24 @@ public class Facade {
 		return app.getNextTargetName();
 	}
 	
+	public List<String> getTopTargets(int k) {
+		return app.getTopTargets(k);
+	}
+	
 	public int getAverageAge() {
 		return app.getAverageAge();
 	}
+	
+	/**
+	 * @return toutes les statistiques de la page des statistiques, null en cas d'erreur
+	 */
+	public Dashboard getDashboard() {
+		return app.getDashboard();
+	}
+	
+	public CompletableFuture<Dashboard> getDashboardAsync() {
+		return async(this::getDashboard);
+	}
 		
 	public void exit() {
 		app.exit();
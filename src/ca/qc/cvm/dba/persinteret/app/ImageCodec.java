@@ -0,0 +1,28 @@
+package ca.qc.cvm.dba.persinteret.app;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Encodage des photos avant leur sauvegarde (voir ImageIngest)
+ */
+public interface ImageCodec {
+
+	/**
+	 * @return nom du format (ex. jpg)
+	 */
+	String getFormatName();
+	
+	/**
+	 * @return true si la qualité influence la taille du résultat (compression avec perte)
+	 */
+	boolean isLossy();
+	
+	/**
+	 * @param image image à encoder, sans transparence
+	 * @param quality qualité entre 0 et 1, ignorée si le format est sans perte
+	 * @return l'image encodée
+	 * @throws IOException
+	 */
+	byte[] encode(BufferedImage image, float quality) throws IOException;
+}
@@ -0,0 +1,67 @@
+package ca.qc.cvm.dba.persinteret.app;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodage avec les écrivains ImageIO disponibles pour un format
+ */
+public class ImageIOCodec implements ImageCodec {
+	public static final ImageIOCodec JPEG = new ImageIOCodec("jpg", true);
+	public static final ImageIOCodec PNG = new ImageIOCodec("png", false);
+	
+	private final String formatName;
+	private final boolean lossy;
+	
+	public ImageIOCodec(String formatName, boolean lossy) {
+		this.formatName = formatName;
+		this.lossy = lossy;
+	}
+	
+	@Override
+	public String getFormatName() {
+		return formatName;
+	}
+	
+	@Override
+	public boolean isLossy() {
+		return lossy;
+	}
+
+	@Override
+	public byte[] encode(BufferedImage image, float quality) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+		
+		if (!writers.hasNext()) {
+			throw new IOException("Format non supporté : " + formatName);
+		}
+		
+		ImageWriter writer = writers.next();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			
+			if (lossy && param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+			}
+			
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+		
+		return baos.toByteArray();
+	}
+}
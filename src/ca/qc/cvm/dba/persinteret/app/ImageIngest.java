@@ -0,0 +1,262 @@
+package ca.qc.cvm.dba.persinteret.app;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Préparation des photos avant leur sauvegarde, commune à l'écran de saisie et à l'importation :
+ *
+ * - l'orientation EXIF (photos prises avec un téléphone) est appliquée aux pixels
+ * - l'image est réduite pour tenir dans un carré de maxDimension pixels (proportions conservées)
+ * - elle est encodée avec le codec choisi, à la qualité demandée ; si le résultat dépasse
+ *   maxBytes, la qualité est diminuée (jusqu'à MIN_QUALITY), puis l'image est réduite
+ *
+ * La configuration par défaut vient des propriétés système persinteret.image.format (jpg, png),
+ * persinteret.image.quality, persinteret.image.maxDimension et persinteret.image.maxBytes.
+ */
+public class ImageIngest {
+	private static final float MIN_QUALITY = 0.5f;
+	private static final int MIN_DIMENSION = 64;
+
+	private static ImageIngest defaultInstance;
+	private static ExecutorService executor;
+
+	private final ImageCodec codec;
+	private final float quality;
+	private final int maxDimension;
+	private final int maxBytes;
+
+	/**
+	 * @param codec encodage du résultat
+	 * @param quality qualité de départ, entre 0 et 1
+	 * @param maxDimension plus grand côté permis, en pixels
+	 * @param maxBytes taille maximale visée, 0 pour aucune limite
+	 */
+	public ImageIngest(ImageCodec codec, float quality, int maxDimension, int maxBytes) {
+		this.codec = codec;
+		this.quality = quality;
+		this.maxDimension = maxDimension;
+		this.maxBytes = maxBytes;
+	}
+
+	public static synchronized ImageIngest getDefault() {
+		if (defaultInstance == null) {
+			String format = System.getProperty("persinteret.image.format", "jpg");
+			ImageCodec codec = format.equalsIgnoreCase("png") ? ImageIOCodec.PNG :
+								format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg") ? ImageIOCodec.JPEG :
+								new ImageIOCodec(format, true);
+
+			defaultInstance = new ImageIngest(codec,
+					Float.parseFloat(System.getProperty("persinteret.image.quality", "0.85")),
+					Integer.getInteger("persinteret.image.maxDimension", 800),
+					Integer.getInteger("persinteret.image.maxBytes", 150 * 1024));
+		}
+
+		return defaultInstance;
+	}
+
+	/**
+	 * Prépare une photo sans bloquer l'appelant (ex. le fil de Swing)
+	 *
+	 * @param file fichier de la photo
+	 * @return la photo encodée, ou une erreur si le fichier n'est pas une image lisible
+	 */
+	public CompletableFuture<byte[]> ingestAsync(final File file) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return ingest(file);
+			}
+			catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, getExecutor());
+	}
+
+	public byte[] ingest(File file) throws IOException {
+		return ingest(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * @param data photo dans un format lisible par ImageIO
+	 * @return la photo encodée
+	 * @throws IOException si la photo ne peut pas être décodée ou encodée
+	 */
+	public byte[] ingest(byte[] data) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+
+		if (image == null) {
+			throw new IOException("Format d'image non reconnu");
+		}
+
+		image = orient(image, readExifOrientation(data));
+		image = fit(image, maxDimension);
+
+		float q = quality;
+		byte[] encoded = codec.encode(image, q);
+
+		while (maxBytes > 0 && encoded.length > maxBytes) {
+			if (codec.isLossy() && q > MIN_QUALITY) {
+				q = Math.max(MIN_QUALITY, q - 0.1f);
+			}
+			else if (Math.max(image.getWidth(), image.getHeight()) > MIN_DIMENSION) {
+				image = fit(image, Math.max(MIN_DIMENSION, (int)(Math.max(image.getWidth(), image.getHeight()) * 0.8)));
+			}
+			else {
+				break;
+			}
+
+			encoded = codec.encode(image, q);
+		}
+
+		return encoded;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(2, r -> {
+				Thread thread = new Thread(r, "image-ingest");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Applique l'orientation EXIF (1 à 8) et retire la transparence
+	 */
+	private static BufferedImage orient(BufferedImage image, int orientation) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		AffineTransform transform;
+
+		switch (orientation) {
+			case 2: transform = new AffineTransform(-1, 0, 0, 1, w, 0); break;
+			case 3: transform = new AffineTransform(-1, 0, 0, -1, w, h); break;
+			case 4: transform = new AffineTransform(1, 0, 0, -1, 0, h); break;
+			case 5: transform = new AffineTransform(0, 1, 1, 0, 0, 0); break;
+			case 6: transform = new AffineTransform(0, 1, -1, 0, h, 0); break;
+			case 7: transform = new AffineTransform(0, -1, -1, 0, h, w); break;
+			case 8: transform = new AffineTransform(0, -1, 1, 0, 0, w); break;
+			default: transform = new AffineTransform();
+		}
+
+		boolean swap = orientation >= 5 && orientation <= 8;
+		BufferedImage output = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = output.createGraphics();
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, output.getWidth(), output.getHeight());
+		g2d.drawImage(image, transform, null);
+		g2d.dispose();
+
+		return output;
+	}
+
+	/**
+	 * Réduit l'image pour que son plus grand côté soit d'au plus maxSize pixels.
+	 * La réduction se fait par moitiés successives, pour éviter le crénelage d'une seule grande réduction.
+	 */
+	private static BufferedImage fit(BufferedImage image, int maxSize) {
+		int largest = Math.max(image.getWidth(), image.getHeight());
+
+		if (largest <= maxSize) {
+			return image;
+		}
+
+		double scale = (double)maxSize / largest;
+		int targetWidth = Math.max(1, (int)Math.round(image.getWidth() * scale));
+		int targetHeight = Math.max(1, (int)Math.round(image.getHeight() * scale));
+		BufferedImage current = image;
+
+		do {
+			int width = Math.max(targetWidth, current.getWidth() / 2);
+			int height = Math.max(targetHeight, current.getHeight() / 2);
+
+			BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2d = output.createGraphics();
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2d.drawImage(current, 0, 0, width, height, null);
+			g2d.dispose();
+			current = output;
+		}
+		while (current.getWidth() > targetWidth || current.getHeight() > targetHeight);
+
+		return current;
+	}
+
+	/**
+	 * Lit l'orientation (balise 0x0112) du segment EXIF d'un JPEG
+	 *
+	 * @return l'orientation, 1 (normale) si absente ou si ce n'est pas un JPEG
+	 */
+	private static int readExifOrientation(byte[] data) {
+		if (data.length < 4 || (data[0] & 0xff) != 0xFF || (data[1] & 0xff) != 0xD8) {
+			return 1;
+		}
+
+		int pos = 2;
+
+		while (pos + 4 <= data.length && (data[pos] & 0xff) == 0xFF) {
+			int marker = data[pos + 1] & 0xff;
+			int length = readShort(data, pos + 2, true);
+			int end = Math.min(data.length, pos + 2 + length);
+
+			// Début des données de l'image : plus de métadonnées
+			if (marker == 0xDA || marker == 0xD9) {
+				break;
+			}
+
+			if (marker == 0xE1 && pos + 10 + 8 <= end && new String(data, pos + 4, 4).equals("Exif")) {
+				int tiff = pos + 10;
+				boolean bigEndian = data[tiff] == 'M';
+				int ifd = tiff + readInt(data, tiff + 4, bigEndian);
+
+				if (ifd > tiff && ifd + 2 <= end) {
+					int entries = readShort(data, ifd, bigEndian);
+
+					for (int i = 0; i < entries && ifd + 2 + (i + 1) * 12 <= end; i++) {
+						int entry = ifd + 2 + i * 12;
+
+						if (readShort(data, entry, bigEndian) == 0x0112) {
+							return readShort(data, entry + 8, bigEndian);
+						}
+					}
+				}
+
+				break;
+			}
+
+			pos += 2 + length;
+		}
+
+		return 1;
+	}
+
+	private static int readShort(byte[] data, int pos, boolean bigEndian) {
+		int b1 = data[pos] & 0xff;
+		int b2 = data[pos + 1] & 0xff;
+
+		return bigEndian ? (b1 << 8) | b2 : (b2 << 8) | b1;
+	}
+
+	private static int readInt(byte[] data, int pos, boolean bigEndian) {
+		int high = readShort(data, bigEndian ? pos : pos + 2, bigEndian);
+		int low = readShort(data, bigEndian ? pos + 2 : pos, bigEndian);
+
+		return (high << 16) | low;
+	}
+}
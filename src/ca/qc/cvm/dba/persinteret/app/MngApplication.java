@@ -1,44 +1,132 @@
 package ca.qc.cvm.dba.persinteret.app;
 
-import java.util.ArrayList;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import ca.qc.cvm.dba.persinteret.dao.BerkeleyConnection;
+import ca.qc.cvm.dba.persinteret.dao.IdMigration;
+import ca.qc.cvm.dba.persinteret.dao.ImageDAO;
 import ca.qc.cvm.dba.persinteret.dao.MongoConnection;
+import ca.qc.cvm.dba.persinteret.dao.NameIndex;
+import ca.qc.cvm.dba.persinteret.dao.Neo4jConnection;
 import ca.qc.cvm.dba.persinteret.dao.PersonDAO;
+import ca.qc.cvm.dba.persinteret.dao.ProgressListener;
+import ca.qc.cvm.dba.persinteret.dao.StatsService;
+import ca.qc.cvm.dba.persinteret.entity.Dashboard;
+import ca.qc.cvm.dba.persinteret.entity.ImageMode;
+import ca.qc.cvm.dba.persinteret.entity.PeoplePage;
 import ca.qc.cvm.dba.persinteret.entity.Person;
+import ca.qc.cvm.dba.persinteret.entity.StatsSnapshot;
 import ca.qc.cvm.dba.persinteret.event.SaveEvent;
 import ca.qc.cvm.dba.persinteret.event.CommonEvent;
 import ca.qc.cvm.dba.persinteret.event.CorrectionEvent;
 import ca.qc.cvm.dba.persinteret.event.DeleteEvent;
 import ca.qc.cvm.dba.persinteret.event.GoToEvent;
+import ca.qc.cvm.dba.persinteret.event.StartupEvent;
 import ca.qc.cvm.dba.persinteret.event.UIEvent;
-import ca.qc.cvm.dba.persinteret.view.FrameMain.Views;
 
-public class MngApplication implements Runnable {
-    private List<CommonEvent> eventQueue;
-    private Person currentPerson;
+
+public class MngApplication {
+    private static final int EVENT_QUEUE_CAPACITY = Integer.getInteger("persinteret.events.capacity", 256);
+    
+    // Deux voies : la navigation n'attend jamais derrière une suppression totale ou une correction
+    private EventLoop immediateLane;
+    private EventLoop backgroundLane;
+    private AtomicBoolean refreshPending = new AtomicBoolean();
+    private volatile Person currentPerson;
+    private final CountDownLatch started = new CountDownLatch(1);
 
     private PropertyChangeSupport support;
     
     public MngApplication() {
-    	eventQueue = new ArrayList<CommonEvent>();
     	support = new PropertyChangeSupport(this);
+    	
+    	immediateLane = new EventLoop("events-immediate", EVENT_QUEUE_CAPACITY, this::processEvent, null);
+    	
+    	// Un seul fil pour les modifications : les écritures (notamment sur une même personne)
+    	// sont faites dans l'ordre où elles ont été demandées
+    	backgroundLane = new EventLoop("events-background", EVENT_QUEUE_CAPACITY, this::processEvent, this::flushRefresh);
+    	
+    	// La mise à niveau est le premier événement de la file des modifications : les écritures
+    	// attendent derrière elle, et les lectures attendent sa fin (voir awaitStartup)
+    	backgroundLane.offer(new StartupEvent());
     }
     
-    public void addEvent(CommonEvent event) {
-    	synchronized(MngApplication.class) {
-    		eventQueue.add(event);
+    /**
+     * Mise à niveau des données d'une version précédente, sans bloquer l'ouverture de la fenêtre ;
+     * l'avancement est affiché dans le titre (Progress)
+     */
+    private void startup() {
+    	try {
+    		// Les photos d'une version précédente sont mises à niveau (par lots)
+    		ImageDAO.upgrade(progressListener("Mise à niveau des photos"));
+    		
+    		// Une base créée avec les identifiants internes de Neo4j est migrée
+    		// (une seule fois : les démarrages suivants ne lisent qu'un marqueur dans BerkeleyDB)
+    		IdMigration.migrate(progressListener("Migration des identifiants"));
+    	}
+    	finally {
+    		support.firePropertyChange(UIEvent.UIType.Progress.toString(), null, null);
+    		started.countDown();
     	}
+    	
+    	// L'index des noms et les statistiques sont construits dès le démarrage,
+    	// pour que la première recherche et la page des statistiques soient rapides
+    	Thread indexLoader = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				NameIndex.load();
+				StatsService.load();
+			}
+		});
+    	indexLoader.setDaemon(true);
+    	indexLoader.start();
     }
-
-	public void run() {
-        synchronized (MngApplication.class) {
-            CommonEvent event = eventQueue.remove(0);
-            processEvent(event);
-        }
+    
+    /**
+     * Les lectures attendent la fin de la mise à niveau (startup)
+     */
+    private void awaitStartup() {
+    	try {
+    		started.await();
+    	}
+    	catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+    
+    /**
+     * @return false si trop d'événements sont déjà en attente
+     */
+    public boolean addEvent(CommonEvent event) {
+    	boolean accepted = isImmediate(event) ? immediateLane.offer(event) : backgroundLane.offer(event);
+    	
+    	if (!accepted) {
+    		support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Trop d'opérations en cours, veuillez réessayer");
+    	}
+    	
+    	return accepted;
+    }
+    
+    /**
+     * @return true pour les événements de navigation, false pour ceux qui modifient les données
+     */
+    private static boolean isImmediate(CommonEvent event) {
+    	return event.getType() == CommonEvent.Type.GoTo || event.getType() == CommonEvent.Type.Back || event.getType() == CommonEvent.Type.UI;
+    }
+    
+    /**
+     * Appelée lorsque la file des modifications est vide : plusieurs suppressions de suite
+     * ne rafraîchissent la vue qu'une seule fois
+     */
+    private void flushRefresh() {
+    	if (refreshPending.getAndSet(false)) {
+    		support.firePropertyChange(UIEvent.UIType.Refresh.toString(), null, "Refresh");
+    	}
     }
 	
 	public void addPropertyChangeListener(PropertyChangeListener pcl) {
@@ -46,7 +134,7 @@ public class MngApplication implements Runnable {
     }
 	
 	/**
-	 * Méthode appelée par la Facade. Elle permet de traiter l'événement.
+	 * Méthode appelée par la file d'événements. Elle permet de traiter l'événement.
 	 * 
 	 * @param event
 	 */
@@ -67,10 +155,14 @@ public class MngApplication implements Runnable {
 		else if (event.getType() == CommonEvent.Type.DeleteAll) {
 			deleteAll();
 		}
+		else if (event.getType() == CommonEvent.Type.Startup) {
+			startup();
+		}
 		else if (event.getType() == CommonEvent.Type.Correction) {
 			CorrectionEvent evt = (CorrectionEvent)event;
-			CorClient c = new CorClient();
+			CorClient c = new CorClient(progressListener("Correction"));
 			c.start(evt.getIp(), evt.getName(), evt.getPwd());
+			support.firePropertyChange(UIEvent.UIType.Progress.toString(), null, null);
 		}
 		else {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Événement inconnu...");
@@ -84,15 +176,32 @@ public class MngApplication implements Runnable {
 		
 		if (success) {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Personne supprimée");
-			support.firePropertyChange( UIEvent.UIType.Refresh.toString(), null, "Refresh");
+			refreshPending.set(true);
 		}
 		else {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Désolé, il semble y avoir eu une erreur lors de la suppression");
 		}
 	}
 	
+	/**
+	 * Avancement d'un long traitement, envoyé à la vue ; un message null indique la fin du traitement
+	 */
+	private ProgressListener progressListener(final String task) {
+		return new ProgressListener() {
+			
+			@Override
+			public void progress(long done, long total, String message) {
+				String text = task + " : " + done + (total >= 0 ? " / " + total : "") + (message != null ? " (" + message + ")" : "");
+				support.firePropertyChange(UIEvent.UIType.Progress.toString(), null, text);
+			}
+		};
+	}
+	
 	private void deleteAll() {
-		if (PersonDAO.deleteAll()) {
+		boolean success = PersonDAO.deleteAll(progressListener("Suppression"));
+		support.firePropertyChange(UIEvent.UIType.Progress.toString(), null, null);
+		
+		if (success) {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Base de données supprimées");
 		}
 		else {
@@ -102,12 +211,15 @@ public class MngApplication implements Runnable {
 	
 	private void save(Person person) {
 		boolean success = false;
+		// Identifiant avant la sauvegarde (null pour une nouvelle personne), pour reconnaître le formulaire d'origine
+		String formId = person.getId();
 		
 		success = PersonDAO.save(person);
 		
 		if (success) {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Sauvegarde effectuée");
-			support.firePropertyChange(UIEvent.UIType.GoTo.toString(), null, Views.List.toString());
+			// La sauvegarde a pu se terminer après que l'utilisateur a changé de page : la vue décide (voir FrameMain)
+			support.firePropertyChange(UIEvent.UIType.Saved.toString(), null, formId != null ? formId : "");
 		}
 		else {
 			support.firePropertyChange(UIEvent.UIType.ShowMessage.toString(), null, "Désolé, veuillez vérifier vos données");
@@ -115,42 +227,88 @@ public class MngApplication implements Runnable {
 	}
 	
 	public List<Person> getPeopleList(String filterText, boolean withImage, int limit) {
+		awaitStartup();
+		
 		List<Person> peopleList = PersonDAO.getPeopleList(filterText, withImage, limit);
 				
 		return peopleList;
 	}
 	
+	public PeoplePage getPeopleListAfter(String lastName, String lastId, String filterText, ImageMode imageMode, int pageSize) {
+		awaitStartup();
+		return PersonDAO.getPeopleListAfter(lastName, lastId, filterText, imageMode, pageSize);
+	}
+	
 	public int getFreeRatio() {
+		awaitStartup();
 		return PersonDAO.getFreeRatio();
 	}
 	
 	public long getPhotoCount() {
+		awaitStartup();
 		return PersonDAO.getPhotoCount();
 	}
 	
 	public long getPeopleCount() {
+		awaitStartup();
 		return PersonDAO.getPeopleCount();
 	}
 	
 	public String getYoungestPerson() {
+		awaitStartup();
 		return PersonDAO.getYoungestPerson();
 	}
 	
 	public String getNextTargetName() {
+		awaitStartup();
 		return PersonDAO.getNextTargetName();
 	}
 	
+	public List<String> getTopTargets(int k) {
+		awaitStartup();
+		return PersonDAO.getTopTargets(k);
+	}
+	
 	public int getAverageAge() {
+		awaitStartup();
 		return PersonDAO.getAverageAge();
 	}
 	
+	/**
+	 * Les statistiques viennent de StatsService (chargé au démarrage, puis tenu à jour) ;
+	 * tant qu'il n'est pas prêt, elles sont calculées par une seule requête (PersonDAO.getDashboard)
+	 */
+	public Dashboard getDashboard() {
+		awaitStartup();
+		
+		if (StatsService.isLoaded()) {
+			StatsSnapshot stats = StatsService.getSnapshot();
+			
+			if (stats != null) {
+				return new Dashboard(stats, PersonDAO.getNextTargetName());
+			}
+		}
+		
+		return PersonDAO.getDashboard();
+	}
+	
 	public Person getCurrentPerson() {
 		return currentPerson;
 	}
 	
+	public EventLoop getImmediateLane() {
+		return immediateLane;
+	}
+	
+	public EventLoop getBackgroundLane() {
+		return backgroundLane;
+	}
+	
 	public void exit() {
 		MongoConnection.releaseConnection();
+		ImageDAO.releaseStore();
 		BerkeleyConnection.releaseConnection();
+		Neo4jConnection.releaseConnection();
 		System.exit(0);
 	}
 }
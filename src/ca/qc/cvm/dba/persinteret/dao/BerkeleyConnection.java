@@ -1,24 +1,36 @@
 package ca.qc.cvm.dba.persinteret.dao;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.sleepycat.je.CheckpointConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentMutableConfig;
+import com.sleepycat.je.Transaction;
 
 public class BerkeleyConnection {
 	private static Database connection;
 	private static Environment environment;
 	private static final String DB_PATH = "database/";
-	private static final String DB_NAME = "personne_db";
+	public static final String DB_NAME = "personne_db";
+	public static final String META_DB_NAME = "meta_db";
+	private static Map<String, Database> databases = new HashMap<String, Database>();
+	private static BerkeleyProfile profile = BerkeleyProfile.fromName(System.getProperty("persinteret.je.profile"));
+	// Partag par les lectures/critures, exclusif pour truncate (qui ferme des handles)
+	private static final ReentrantReadWriteLock accessLock = new ReentrantReadWriteLock();
 	
 	/**
 	 * Mthode qui permet de retourner une connexion  la base de donnes
 	 * 
 	 * @return
 	 */
-	public static Database getConnection() {
+	public static synchronized Database getConnection() {
 		if (connection == null) {
 		 
 	        try {
@@ -32,7 +44,13 @@ public class BerkeleyConnection {
 	            EnvironmentConfig envConfig = new EnvironmentConfig();
 	            envConfig.setAllowCreate(true);
 	            envConfig.setTransactional(true);
-	            environment = new Environment(new File(DB_PATH), envConfig);
+	            // Point de contrle priodique : borne la perte possible lorsque les commits ne sont pas synchroniss
+	            envConfig.setConfigParam(EnvironmentConfig.CHECKPOINTER_WAKEUP_INTERVAL, "30 s");
+	            profile.applyTo(envConfig);
+	            
+	            if (environment == null) {
+	            	environment = new Environment(new File(DB_PATH), envConfig);
+	            }
 	 
 	            // Open the database, creating one if it does not exist
 	            DatabaseConfig dbConfig = new DatabaseConfig();
@@ -49,6 +67,144 @@ public class BerkeleyConnection {
 		return connection;
 	}
 	
+	/**
+	 * Mthode qui permet de retourner une autre base de donnes du mme environnement
+	 * (ex. mtadonnes), cre si elle n'existe pas
+	 * 
+	 * @param name nom de la base de donnes
+	 * @return
+	 */
+	public static synchronized Database getDatabase(String name) {
+		Database database = databases.get(name);
+		
+		if (database == null && getConnection() != null) {
+			try {
+				DatabaseConfig dbConfig = new DatabaseConfig();
+				dbConfig.setTransactional(true);
+				dbConfig.setAllowCreate(true);
+				
+				database = environment.openDatabase(null, name, dbConfig);
+				databases.put(name, database);
+			}
+			catch (Exception dbe) {
+				dbe.printStackTrace();
+			}
+		}
+		
+		return database;
+	}
+	
+	/**
+	 * Change le profil de configuration de l'environnement (cache, durabilit, nettoyage).
+	 * En quittant un profil sans synchronisation, le journal est crit sur disque et un point 
+	 * de contrle est effectu afin que les donnes du lot soient durables.
+	 * 
+	 * Si l'environnement n'est pas encore ouvert, le profil sera appliqu  son ouverture.
+	 * 
+	 * @param newProfile profil  utiliser
+	 * @return le profil prcdent (afin de pouvoir le rtablir)
+	 */
+	public static synchronized BerkeleyProfile useProfile(BerkeleyProfile newProfile) {
+		BerkeleyProfile previous = profile;
+		profile = newProfile;
+		
+		if (environment != null && previous != newProfile) {
+			try {
+				if (!previous.isSyncOnCommit() && newProfile.isSyncOnCommit()) {
+					environment.flushLog(true);
+					environment.checkpoint(new CheckpointConfig());
+				}
+				
+				EnvironmentMutableConfig config = environment.getMutableConfig();
+				newProfile.applyTo(config);
+				environment.setMutableConfig(config);
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return previous;
+	}
+	
+	/**
+	 *  appeler avant d'obtenir un handle (getConnection, getDatabase) et de s'en servir, 
+	 * avec endAccess dans un finally : truncate attend alors que le handle ne soit plus utilis.
+	 * 
+	 * Le verrou doit tre pris avant tout appel  getConnection/getDatabase (et non pendant).
+	 */
+	public static void beginAccess() {
+		accessLock.readLock().lock();
+	}
+	
+	public static void endAccess() {
+		accessLock.readLock().unlock();
+	}
+	
+	/**
+	 * Vide des bases de donnes d'un seul coup (Environment.truncateDatabase), 
+	 * sans parcourir leurs enregistrements. Leurs handles sont ferms le temps de l'opration, 
+	 * puis rouverts au prochain getConnection/getDatabase.
+	 * 
+	 * Les nouveaux accs (beginAccess) sont bloqus et ceux en cours sont attendus : aucun autre fil
+	 * n'utilise un handle ferm, et aucun curseur n'est encore ouvert lors de la fermeture.
+	 * Ne doit pas tre appele entre beginAccess et endAccess.
+	 * 
+	 * @param names noms des bases de donnes (DB_NAME pour la base principale)
+	 * @return true si succs, false sinon
+	 */
+	public static boolean truncate(String... names) {
+		accessLock.writeLock().lock();
+		
+		try {
+			return truncateDatabases(names);
+		}
+		finally {
+			accessLock.writeLock().unlock();
+		}
+	}
+	
+	private static synchronized boolean truncateDatabases(String... names) {
+		boolean success = false;
+		Transaction txn = null;
+		
+		try {
+			getConnection();
+			List<String> existing = environment.getDatabaseNames();
+			
+			for (String name : names) {
+				if (DB_NAME.equals(name)) {
+					if (connection != null) {
+						connection.close();
+						connection = null;
+					}
+				}
+				else if (databases.containsKey(name)) {
+					databases.remove(name).close();
+				}
+			}
+			
+			txn = environment.beginTransaction(null, null);
+			
+			for (String name : names) {
+				if (existing.contains(name)) {
+					environment.truncateDatabase(txn, name, false);
+				}
+			}
+			
+			txn.commit();
+			success = true;
+		}
+		catch (Exception e) {
+			if (txn != null) {
+				txn.abort();
+			}
+			e.printStackTrace();
+		}
+		
+		return success;
+	}
+	
 	/**
 	 * Mthode permettant de tester la connexion
 	 * 
@@ -62,11 +218,20 @@ public class BerkeleyConnection {
 		return valid;
 	}
 	
-	public static void releaseConnection() {
-		if (connection != null) {
+	public static synchronized void releaseConnection() {
+		if (environment != null) {
 			try {
-				connection.close();
-				connection = null;
+				for (Database database : databases.values()) {
+					database.close();
+				}
+				
+				databases.clear();
+				
+				if (connection != null) {
+					connection.close();
+					connection = null;
+				}
+				
 				environment.close();
 				environment = null;
 			} 
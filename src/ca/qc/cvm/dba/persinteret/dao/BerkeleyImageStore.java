@@ -0,0 +1,753 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sleepycat.bind.tuple.IntegerBinding;
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/**
+ * Photos des personnes sauvegardées dans BerkeleyDB selon leur contenu (stockage par défaut, voir ImageDAO) :
+ * 
+ * - personne_db : identifiant de la personne (16 octets, voir PersonKeys) -> empreinte SHA-256 de la photo
+ * - image_db : empreinte -> photo
+ * - image_ref_db : empreinte -> nombre de personnes qui utilisent la photo
+ * - thumbnail_db : empreinte -> vignette de la photo (voir ImageDAO.createThumbnail)
+ * 
+ * Une même photo (ex. photo par défaut, alias d'une même personne) n'est donc sauvegardée
+ * qu'une seule fois, et elle est supprimée lorsque plus aucune personne ne l'utilise.
+ * 
+ * Chaque opération utilise les handles entre BerkeleyConnection.beginAccess et endAccess,
+ * afin que deleteAll (truncate) ne les ferme pas pendant leur utilisation.
+ */
+class BerkeleyImageStore implements ImageStore {
+	private static final String IMAGE_DB_NAME = "image_db";
+	private static final String IMAGE_REF_DB_NAME = "image_ref_db";
+	private static final String THUMBNAIL_DB_NAME = "thumbnail_db";
+	private static final byte[] PHOTO_COUNT_KEY = {'p', 'h', 'o', 't', 'o', 's'};
+	private static final byte[] LAYOUT_KEY = {'l', 'a', 'y', 'o', 'u', 't'};
+	private static final byte[] LAYOUT_POSITION_KEY = {'l', 'a', 'y', 'o', 'u', 't', '_', 'p', 'o', 's'};
+	private static final int UPGRADE_BATCH_SIZE = 50;
+	private static final int CONTENT_LAYOUT = 2;
+	private static final int THUMBNAIL_LAYOUT = 3;
+	private boolean photoCountReady = false;
+	private boolean layoutReady = false;
+
+	/**
+	 * Retourne la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return la photo, ou null si elle n'existe pas
+	 */
+	@Override
+	public byte[] get(String personId) {
+		return get(personId, IMAGE_DB_NAME);
+	}
+
+	/**
+	 * Retourne la vignette de la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return la vignette, ou null si la personne n'a pas de photo
+	 */
+	@Override
+	public byte[] getThumbnail(String personId) {
+		return get(personId, THUMBNAIL_DB_NAME);
+	}
+
+	/**
+	 * @param blobsName base des photos ou des vignettes
+	 */
+	private byte[] get(String personId, String blobsName) {
+		byte[] data = null;
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initLayout();
+			Database connection = BerkeleyConnection.getConnection();
+			Database blobs = BerkeleyConnection.getDatabase(blobsName);
+			DatabaseEntry theHash = new DatabaseEntry();
+			DatabaseEntry theData = new DatabaseEntry();
+
+			if (connection.get(null, toKey(personId), theHash, LockMode.DEFAULT) == OperationStatus.SUCCESS
+					&& blobs.get(null, theHash, theData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				data = theData.getData();
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+
+		return data;
+	}
+
+	/**
+	 * Retourne les photos de plusieurs personnes en deux parcours de curseur
+	 * (les empreintes, puis les photos distinctes).
+	 *
+	 * Les clés sont triées dans l'ordre de la base (octets non signés) avant la lecture,
+	 * de sorte que le curseur avance toujours vers l'avant dans l'arbre au lieu de faire
+	 * une recherche aléatoire par personne.
+	 *
+	 * @param personIds identifiants des personnes
+	 * @return les photos trouvées, selon l'identifiant de la personne
+	 */
+	@Override
+	public Map<String, byte[]> getAll(Collection<String> personIds) {
+		return getAll(personIds, IMAGE_DB_NAME);
+	}
+
+	/**
+	 * Retourne les vignettes de plusieurs personnes (voir getAll)
+	 *
+	 * @param personIds identifiants des personnes
+	 * @return les vignettes trouvées, selon l'identifiant de la personne
+	 */
+	@Override
+	public Map<String, byte[]> getThumbnails(Collection<String> personIds) {
+		return getAll(personIds, THUMBNAIL_DB_NAME);
+	}
+
+	private Map<String, byte[]> getAll(Collection<String> personIds, String blobsName) {
+		Map<String, byte[]> images = new HashMap<String, byte[]>();
+		Cursor cursor = null;
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initLayout();
+			Database connection = BerkeleyConnection.getConnection();
+			Database blobs = BerkeleyConnection.getDatabase(blobsName);
+			List<String> sortedIds = new ArrayList<String>(personIds);
+			final Map<String, byte[]> keys = new HashMap<String, byte[]>();
+
+			for (String personId : sortedIds) {
+				keys.put(personId, toKey(personId).getData());
+			}
+
+			Collections.sort(sortedIds, new Comparator<String>() {
+
+				@Override
+				public int compare(String id1, String id2) {
+					return compareKeys(keys.get(id1), keys.get(id2));
+				}
+			});
+
+			cursor = connection.openCursor(null, null);
+			DatabaseEntry theHash = new DatabaseEntry();
+			Map<String, List<String>> idsByHash = new HashMap<String, List<String>>();
+			Map<String, byte[]> hashes = new HashMap<String, byte[]>();
+
+			for (String personId : sortedIds) {
+				if (cursor.getSearchKey(new DatabaseEntry(keys.get(personId)), theHash, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					String hashKey = Arrays.toString(theHash.getData());
+					hashes.put(hashKey, theHash.getData());
+
+					if (!idsByHash.containsKey(hashKey)) {
+						idsByHash.put(hashKey, new ArrayList<String>());
+					}
+
+					idsByHash.get(hashKey).add(personId);
+				}
+			}
+
+			cursor.close();
+			cursor = null;
+
+			List<byte[]> sortedHashes = new ArrayList<byte[]>(hashes.values());
+			Collections.sort(sortedHashes, new Comparator<byte[]>() {
+
+				@Override
+				public int compare(byte[] hash1, byte[] hash2) {
+					return compareKeys(hash1, hash2);
+				}
+			});
+
+			cursor = blobs.openCursor(null, null);
+			DatabaseEntry theData = new DatabaseEntry();
+
+			for (byte[] hash : sortedHashes) {
+				if (cursor.getSearchKey(new DatabaseEntry(hash), theData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					for (String personId : idsByHash.get(Arrays.toString(hash))) {
+						images.put(personId, theData.getData());
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+
+			BerkeleyConnection.endAccess();
+		}
+
+		return images;
+	}
+
+	/**
+	 * Sauvegarde plusieurs photos à l'intérieur d'une seule transaction.
+	 * Utilisé par l'importation en lot afin d'éviter un commit par photo.
+	 * 
+	 * Une photo déjà connue (même empreinte) n'est pas réécrite, seul son compteur de références augmente.
+	 * La photo remplacée perd une référence.
+	 * 
+	 * Les empreintes et les vignettes (une par photo distincte) sont calculées avant la transaction :
+	 * aucun verrou n'est gardé pendant le traitement des images.
+	 *
+	 * @param images photos, selon l'identifiant de la personne (les photos null sont ignorées)
+	 * @return true si succès, false sinon (aucune photo n'est alors sauvegardée)
+	 */
+	@Override
+	public boolean saveAll(Map<String, byte[]> images) {
+		boolean success = false;
+		Transaction txn = null;
+		Map<String, PreparedImage> prepared = new HashMap<String, PreparedImage>();
+		Map<String, PreparedImage> byHash = new HashMap<String, PreparedImage>();
+
+		for (Map.Entry<String, byte[]> image : images.entrySet()) {
+			if (image.getValue() != null) {
+				byte[] hash = hash(image.getValue());
+				PreparedImage preparedImage = byHash.get(Arrays.toString(hash));
+
+				if (preparedImage == null) {
+					preparedImage = new PreparedImage(hash, image.getValue(), ImageDAO.createThumbnail(image.getValue()));
+					byHash.put(Arrays.toString(hash), preparedImage);
+				}
+
+				prepared.put(image.getKey(), preparedImage);
+			}
+		}
+
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initLayout();
+			initPhotoCount();
+			Database connection = BerkeleyConnection.getConnection();
+			txn = connection.getEnvironment().beginTransaction(null, null);
+			long added = 0;
+
+			for (Map.Entry<String, PreparedImage> image : prepared.entrySet()) {
+				DatabaseEntry theKey = toKey(image.getKey());
+				DatabaseEntry previousHash = new DatabaseEntry();
+				byte[] hash = image.getValue().hash;
+
+				if (connection.get(txn, theKey, previousHash, LockMode.RMW) == OperationStatus.SUCCESS) {
+					if (!Arrays.equals(hash, previousHash.getData())) {
+						connection.put(txn, theKey, new DatabaseEntry(hash));
+						addReference(txn, image.getValue());
+						removeReference(txn, previousHash.getData());
+					}
+				}
+				else {
+					connection.put(txn, theKey, new DatabaseEntry(hash));
+					addReference(txn, image.getValue());
+					added++;
+				}
+			}
+
+			addToPhotoCount(txn, added);
+			txn.commit();
+			success = true;
+		}
+		catch (Exception e) {
+			if (txn != null) {
+				txn.abort();
+			}
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+
+		return success;
+	}
+
+	/**
+	 * Supprime la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return true si succès, false sinon
+	 */
+	@Override
+	public boolean delete(String personId) {
+		boolean success = false;
+		Transaction txn = null;
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initLayout();
+			initPhotoCount();
+			Database connection = BerkeleyConnection.getConnection();
+			txn = connection.getEnvironment().beginTransaction(null, null);
+			DatabaseEntry theKey = toKey(personId);
+			DatabaseEntry theHash = new DatabaseEntry();
+
+			if (connection.get(txn, theKey, theHash, LockMode.RMW) == OperationStatus.SUCCESS) {
+				connection.delete(txn, theKey);
+				removeReference(txn, theHash.getData());
+				addToPhotoCount(txn, -1);
+			}
+
+			txn.commit();
+			success = true;
+		}
+		catch (Exception e) {
+			if (txn != null) {
+				txn.abort();
+			}
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+
+		return success;
+	}
+
+	/**
+	 * Passage des anciennes clés (identifiant interne de Neo4j en texte) aux clés de 16 octets.
+	 * Les photos dont l'ancienne clé n'est pas dans la correspondance appartenaient à une personne
+	 * supprimée : elles sont retirées.
+	 */
+	@Override
+	public boolean rekey(Map<String, String> newIds) {
+		boolean success = false;
+		Transaction txn = null;
+		Cursor cursor = null;
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initLayout();
+			initPhotoCount();
+			Database connection = BerkeleyConnection.getConnection();
+			txn = connection.getEnvironment().beginTransaction(null, null);
+			cursor = connection.openCursor(txn, null);
+			DatabaseEntry foundKey = new DatabaseEntry();
+			DatabaseEntry foundHash = new DatabaseEntry();
+			long removed = 0;
+
+			while (cursor.getNext(foundKey, foundHash, LockMode.RMW) == OperationStatus.SUCCESS) {
+				// Les nouvelles clés (y compris celles ajoutées par ce parcours) sont ignorées
+				if (foundKey.getSize() != PersonKeys.KEY_SIZE) {
+					String newId = newIds.get(new String(foundKey.getData(), "UTF-8"));
+					cursor.delete();
+
+					if (newId != null) {
+						connection.put(txn, toKey(newId), new DatabaseEntry(foundHash.getData()));
+					}
+					else {
+						removeReference(txn, foundHash.getData());
+						removed++;
+					}
+				}
+			}
+
+			cursor.close();
+			cursor = null;
+
+			addToPhotoCount(txn, -removed);
+			txn.commit();
+			success = true;
+		}
+		catch (Exception e) {
+			if (cursor != null) {
+				cursor.close();
+			}
+			if (txn != null) {
+				txn.abort();
+			}
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+
+		return success;
+	}
+
+	/**
+	 * Supprime toutes les photos
+	 *
+	 * @return true si succès, false sinon
+	 */
+	@Override
+	public boolean deleteAll() {
+		boolean success = false;
+
+		try {
+			BerkeleyConnection.beginAccess();
+
+			try {
+				initLayout();
+			}
+			finally {
+				BerkeleyConnection.endAccess();
+			}
+
+			// Les bases sont vidées d'un coup (truncate attend la fin des lectures en cours) plutôt qu'enregistrement par enregistrement
+			if (BerkeleyConnection.truncate(BerkeleyConnection.DB_NAME, IMAGE_DB_NAME, IMAGE_REF_DB_NAME, THUMBNAIL_DB_NAME)) {
+				BerkeleyConnection.beginAccess();
+
+				try {
+					writePhotoCount(null, 0);
+				}
+				finally {
+					BerkeleyConnection.endAccess();
+				}
+
+				success = true;
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		return success;
+	}
+
+	@Override
+	public void close() {
+		// L'environnement est fermé par BerkeleyConnection.releaseConnection()
+	}
+
+	/**
+	 * Nombre de photos sauvegardées. Le compteur est maintenu par save/delete/deleteAll
+	 * dans la base de métadonnées, dans la même transaction que la photo : sa lecture
+	 * ne dépend donc pas du nombre de photos.
+	 *
+	 * @return nombre
+	 */
+	@Override
+	public long count() {
+		long count = 0;
+		BerkeleyConnection.beginAccess();
+
+		try {
+			initPhotoCount();
+			DatabaseEntry theData = new DatabaseEntry();
+
+			if (BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME).get(null, new DatabaseEntry(PHOTO_COUNT_KEY), theData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				count = LongBinding.entryToLong(theData);
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Une base existante n'a pas encore de compteur : on compte alors une seule fois
+	 * les clés (sans lire les photos), puis on le sauvegarde
+	 */
+	private synchronized void initPhotoCount() {
+		if (!photoCountReady) {
+			Database meta = BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME);
+
+			if (meta.get(null, new DatabaseEntry(PHOTO_COUNT_KEY), new DatabaseEntry(), LockMode.DEFAULT) != OperationStatus.SUCCESS) {
+				long count = 0;
+				Cursor cursor = BerkeleyConnection.getConnection().openCursor(null, null);
+
+				try {
+					DatabaseEntry foundKey = new DatabaseEntry();
+					DatabaseEntry foundData = new DatabaseEntry();
+					foundData.setPartial(0, 0, true);
+
+					while (cursor.getNext(foundKey, foundData, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+						count++;
+					}
+				}
+				finally {
+					cursor.close();
+				}
+
+				writePhotoCount(null, count);
+			}
+
+			photoCountReady = true;
+		}
+	}
+
+	/**
+	 * Mise à niveau, une seule fois, d'une base créée par une version précédente :
+	 * 
+	 * - avant le stockage par contenu, les photos sont directement sous l'identifiant de la personne :
+	 *   elles sont déplacées dans image_db (avec leur vignette) et personne_db reçoit l'empreinte
+	 * - avant les vignettes, celles des photos existantes sont créées
+	 * 
+	 * Les photos sont traitées par lots de UPGRADE_BATCH_SIZE, chacun dans sa propre transaction ; 
+	 * les empreintes et vignettes d'un lot sont calculées avant sa transaction. La dernière clé traitée 
+	 * est notée dans les métadonnées avec chaque lot : une mise à niveau interrompue reprend où elle s'était arrêtée.
+	 * La version du format est notée à la fin.
+	 * 
+	 * Lancée explicitement au démarrage (voir ImageDAO.upgrade) ; les autres opérations ne la lancent
+	 * elles-mêmes que si ce n'est pas déjà fait.
+	 *
+	 * @param listener reçoit l'avancement, peut être null
+	 * @return nombre de photos mises à niveau
+	 */
+	@Override
+	public long upgrade(ProgressListener listener) {
+		BerkeleyConnection.beginAccess();
+
+		try {
+			return upgradeLayout(listener);
+		}
+		finally {
+			BerkeleyConnection.endAccess();
+		}
+	}
+
+	private void initLayout() {
+		upgradeLayout(null);
+	}
+
+	private synchronized long upgradeLayout(ProgressListener listener) {
+		long done = 0;
+
+		if (!layoutReady) {
+			Database meta = BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME);
+			DatabaseEntry theLayout = new DatabaseEntry();
+			DatabaseEntry thePosition = new DatabaseEntry();
+			int layout = 0;
+			byte[] position = null;
+
+			if (meta.get(null, new DatabaseEntry(LAYOUT_KEY), theLayout, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				layout = IntegerBinding.entryToInt(theLayout);
+			}
+
+			if (meta.get(null, new DatabaseEntry(LAYOUT_POSITION_KEY), thePosition, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				position = thePosition.getData();
+			}
+
+			if (layout < THUMBNAIL_LAYOUT) {
+				boolean byContent = layout < CONTENT_LAYOUT;
+				Database source = byContent ? BerkeleyConnection.getConnection() : getImageDatabase();
+				boolean finished = false;
+
+				while (!finished) {
+					// Lecture du lot suivant, hors transaction
+					List<byte[]> keys = new ArrayList<byte[]>();
+					List<byte[]> photos = new ArrayList<byte[]>();
+					Cursor cursor = source.openCursor(null, null);
+
+					try {
+						DatabaseEntry foundKey = position != null ? new DatabaseEntry(position) : new DatabaseEntry();
+						DatabaseEntry foundData = new DatabaseEntry();
+						OperationStatus status = position != null ? cursor.getSearchKeyRange(foundKey, foundData, LockMode.DEFAULT)
+												: cursor.getFirst(foundKey, foundData, LockMode.DEFAULT);
+
+						if (status == OperationStatus.SUCCESS && position != null && Arrays.equals(foundKey.getData(), position)) {
+							status = cursor.getNext(foundKey, foundData, LockMode.DEFAULT);
+						}
+
+						while (status == OperationStatus.SUCCESS && keys.size() < UPGRADE_BATCH_SIZE) {
+							keys.add(foundKey.getData());
+							photos.add(foundData.getData());
+							status = cursor.getNext(foundKey, foundData, LockMode.DEFAULT);
+						}
+					}
+					finally {
+						cursor.close();
+					}
+
+					// Empreintes et vignettes, hors transaction
+					List<PreparedImage> prepared = new ArrayList<PreparedImage>();
+
+					for (int i = 0; i < keys.size(); i++) {
+						prepared.add(new PreparedImage(byContent ? hash(photos.get(i)) : keys.get(i), photos.get(i), 
+								ImageDAO.createThumbnail(photos.get(i))));
+					}
+
+					finished = keys.size() < UPGRADE_BATCH_SIZE;
+					Transaction txn = source.getEnvironment().beginTransaction(null, null);
+
+					try {
+						for (int i = 0; i < keys.size(); i++) {
+							PreparedImage image = prepared.get(i);
+
+							if (byContent) {
+								source.put(txn, new DatabaseEntry(keys.get(i)), new DatabaseEntry(image.hash));
+								addReference(txn, image);
+							}
+							else if (image.thumbnail != null) {
+								getThumbnailDatabase().put(txn, new DatabaseEntry(image.hash), new DatabaseEntry(image.thumbnail));
+							}
+						}
+
+						if (finished) {
+							IntegerBinding.intToEntry(THUMBNAIL_LAYOUT, theLayout);
+							meta.put(txn, new DatabaseEntry(LAYOUT_KEY), theLayout);
+							meta.delete(txn, new DatabaseEntry(LAYOUT_POSITION_KEY));
+						}
+						else {
+							position = keys.get(keys.size() - 1);
+							meta.put(txn, new DatabaseEntry(LAYOUT_POSITION_KEY), new DatabaseEntry(position));
+						}
+
+						txn.commit();
+					}
+					catch (RuntimeException e) {
+						txn.abort();
+						throw e;
+					}
+
+					done += keys.size();
+
+					if (listener != null && !keys.isEmpty()) {
+						listener.progress(done, -1, "Photos mises à niveau");
+					}
+				}
+			}
+
+			layoutReady = true;
+		}
+
+		return done;
+	}
+
+	/**
+	 * Ajoute une référence à une photo, sauvegardée (avec sa vignette) si elle n'existe pas encore
+	 */
+	private static void addReference(Transaction txn, PreparedImage image) {
+		DatabaseEntry theHash = new DatabaseEntry(image.hash);
+		DatabaseEntry theCount = new DatabaseEntry();
+		long count = 0;
+
+		if (getReferenceDatabase().get(txn, theHash, theCount, LockMode.RMW) == OperationStatus.SUCCESS) {
+			count = LongBinding.entryToLong(theCount);
+		}
+
+		if (count == 0) {
+			getImageDatabase().put(txn, theHash, new DatabaseEntry(image.data));
+
+			if (image.thumbnail != null) {
+				getThumbnailDatabase().put(txn, theHash, new DatabaseEntry(image.thumbnail));
+			}
+		}
+
+		LongBinding.longToEntry(count + 1, theCount);
+		getReferenceDatabase().put(txn, theHash, theCount);
+	}
+
+	/**
+	 * Retire une référence à une photo, supprimée lorsque plus personne ne l'utilise
+	 */
+	private static void removeReference(Transaction txn, byte[] hash) {
+		DatabaseEntry theHash = new DatabaseEntry(hash);
+		DatabaseEntry theCount = new DatabaseEntry();
+		long count = 0;
+
+		if (getReferenceDatabase().get(txn, theHash, theCount, LockMode.RMW) == OperationStatus.SUCCESS) {
+			count = LongBinding.entryToLong(theCount);
+		}
+
+		if (count <= 1) {
+			getReferenceDatabase().delete(txn, theHash);
+			getImageDatabase().delete(txn, theHash);
+			getThumbnailDatabase().delete(txn, theHash);
+		}
+		else {
+			LongBinding.longToEntry(count - 1, theCount);
+			getReferenceDatabase().put(txn, theHash, theCount);
+		}
+	}
+
+	/**
+	 * Photo prête à être écrite : empreinte et vignette déjà calculées
+	 */
+	private static class PreparedImage {
+		private final byte[] hash;
+		private final byte[] data;
+		private final byte[] thumbnail;
+
+		public PreparedImage(byte[] hash, byte[] data, byte[] thumbnail) {
+			this.hash = hash;
+			this.data = data;
+			this.thumbnail = thumbnail;
+		}
+	}
+
+	private static Database getImageDatabase() {
+		return BerkeleyConnection.getDatabase(IMAGE_DB_NAME);
+	}
+
+	private static Database getReferenceDatabase() {
+		return BerkeleyConnection.getDatabase(IMAGE_REF_DB_NAME);
+	}
+
+	private static Database getThumbnailDatabase() {
+		return BerkeleyConnection.getDatabase(THUMBNAIL_DB_NAME);
+	}
+
+	private static byte[] hash(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void addToPhotoCount(Transaction txn, long delta) {
+		if (delta != 0) {
+			Database meta = BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME);
+			DatabaseEntry theData = new DatabaseEntry();
+			long count = 0;
+
+			if (meta.get(txn, new DatabaseEntry(PHOTO_COUNT_KEY), theData, LockMode.RMW) == OperationStatus.SUCCESS) {
+				count = LongBinding.entryToLong(theData);
+			}
+
+			writePhotoCount(txn, Math.max(0, count + delta));
+		}
+	}
+
+	private static void writePhotoCount(Transaction txn, long count) {
+		DatabaseEntry theData = new DatabaseEntry();
+		LongBinding.longToEntry(count, theData);
+		BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME).put(txn, new DatabaseEntry(PHOTO_COUNT_KEY), theData);
+	}
+
+	private static int compareKeys(byte[] key1, byte[] key2) {
+		for (int i = 0; i < key1.length && i < key2.length; i++) {
+			int diff = (key1[i] & 0xff) - (key2[i] & 0xff);
+
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return key1.length - key2.length;
+	}
+
+	private static DatabaseEntry toKey(String personId) {
+		return PersonKeys.toKey(personId);
+	}
+}
@@ -0,0 +1,74 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentMutableConfig;
+
+/**
+ * Profils de configuration de l'environnement BerkeleyDB (voir BerkeleyConnection.useProfile)
+ * 
+ * - INTERACTIVE : utilisation normale de l'application, chaque commit est écrit sur disque (fsync)
+ * - BULK_LOAD : importation en lot, les commits ne sont pas synchronisés individuellement 
+ *   (les points de contrôle périodiques et le retour au profil précédent s'en chargent), 
+ *   et le nettoyage des fichiers journaux est moins agressif
+ * - READ_MOSTLY : consultation, une plus grande partie de la mémoire sert de cache
+ * 
+ * La taille des fichiers journaux ne peut être choisie qu'à l'ouverture de l'environnement,
+ * les autres paramètres peuvent être changés en tout temps.
+ */
+public enum BerkeleyProfile {
+	INTERACTIVE(40, Durability.COMMIT_SYNC, 10 * 1024 * 1024, 50),
+	BULK_LOAD(50, Durability.COMMIT_WRITE_NO_SYNC, 100 * 1024 * 1024, 30),
+	READ_MOSTLY(70, Durability.COMMIT_SYNC, 50 * 1024 * 1024, 60);
+	
+	private final int cachePercent;
+	private final Durability durability;
+	private final long logFileMax;
+	private final int cleanerMinUtilization;
+	
+	private BerkeleyProfile(int cachePercent, Durability durability, long logFileMax, int cleanerMinUtilization) {
+		this.cachePercent = cachePercent;
+		this.durability = durability;
+		this.logFileMax = logFileMax;
+		this.cleanerMinUtilization = cleanerMinUtilization;
+	}
+	
+	/**
+	 * Paramètres utilisés à l'ouverture de l'environnement
+	 * 
+	 * @param config
+	 */
+	public void applyTo(EnvironmentConfig config) {
+		applyTo((EnvironmentMutableConfig)config);
+		config.setConfigParam(EnvironmentConfig.LOG_FILE_MAX, String.valueOf(logFileMax));
+	}
+	
+	/**
+	 * Paramètres qui peuvent être changés pendant que l'environnement est ouvert
+	 * 
+	 * @param config
+	 */
+	public void applyTo(EnvironmentMutableConfig config) {
+		config.setCachePercent(cachePercent);
+		config.setDurability(durability);
+		config.setConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION, String.valueOf(cleanerMinUtilization));
+	}
+	
+	public boolean isSyncOnCommit() {
+		return durability == Durability.COMMIT_SYNC;
+	}
+	
+	/**
+	 * @param name nom du profil, insensible à la casse
+	 * @return le profil, ou INTERACTIVE si le nom est absent ou inconnu
+	 */
+	public static BerkeleyProfile fromName(String name) {
+		for (BerkeleyProfile profile : values()) {
+			if (profile.name().equalsIgnoreCase(name)) {
+				return profile;
+			}
+		}
+		
+		return INTERACTIVE;
+	}
+}
@@ -0,0 +1,137 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.driver.Record;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Migration d'une base créée avec les identifiants internes de Neo4j vers les identifiants
+ * stables (voir PersonKeys).
+ *
+ * 1. Chaque personne sans uid en reçoit un, par lots ; l'ancien identifiant est gardé dans legacyId
+ * 2. Les photos sont déplacées sous leur nouvelle clé (les photos orphelines sont supprimées)
+ * 3. legacyId est retiré
+ *
+ * Comme l'ancien identifiant est gardé jusqu'à la fin, une migration interrompue peut simplement être relancée.
+ * Elle est lancée au démarrage de l'application, et peut l'être seule avec main().
+ * 
+ * Une fois terminée, un marqueur est gardé dans meta_db (BerkeleyDB) : les démarrages suivants
+ * ne font alors aucune requête dans Neo4j (les recherches "uid IS NULL" ne peuvent pas utiliser d'index).
+ */
+public class IdMigration {
+	private static final int BATCH_SIZE = 1000;
+	private static final byte[] MIGRATED_KEY = {'i', 'd', 's', '_', 'm', 'i', 'g', 'r', 'a', 't', 'e', 'd'};
+
+	/**
+	 * @param listener reçoit l'avancement, peut être null
+	 * @return nombre de personnes migrées, -1 en cas d'erreur
+	 */
+	public static synchronized long migrate(ProgressListener listener) {
+		long migrated = 0;
+
+		try {
+			if (isMigrated()) {
+				return 0;
+			}
+			
+			int assigned;
+
+			do {
+				assigned = Neo4jConnection.withTransaction(tx -> {
+					Map<String, Object> params = new HashMap<String, Object>();
+					params.put("limit", BATCH_SIZE);
+					List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+
+					for (Record record : tx.run("MATCH (a:Person) WHERE a.uid IS NULL RETURN id(a) AS nodeId LIMIT $limit", params).list()) {
+						Map<String, Object> row = new HashMap<String, Object>();
+						row.put("nodeId", record.get("nodeId").asLong());
+						row.put("uid", PersonKeys.newId());
+						rows.add(row);
+					}
+
+					params.put("rows", rows);
+					tx.run("UNWIND $rows AS row MATCH (a:Person) WHERE id(a) = row.nodeId "
+							+ "SET a.uid = row.uid, a.legacyId = toString(id(a))", params).consume();
+
+					return rows.size();
+				});
+
+				migrated += assigned;
+
+				if (listener != null && assigned > 0) {
+					listener.progress(migrated, -1, "Identifiants attribués");
+				}
+			}
+			while (assigned == BATCH_SIZE);
+
+			final Map<String, String> newIds = new HashMap<String, String>();
+
+			for (Record record : Neo4jConnection.withReadTransaction(tx -> tx.run("MATCH (a:Person) WHERE a.legacyId IS NOT NULL "
+					+ "RETURN a.legacyId AS legacyId, a.uid AS uid").list())) {
+				newIds.put(record.get("legacyId").asString(), record.get("uid").asString());
+			}
+
+			if (!newIds.isEmpty()) {
+				if (!ImageDAO.rekey(newIds)) {
+					return -1;
+				}
+
+				if (listener != null) {
+					listener.progress(newIds.size(), newIds.size(), "Photos déplacées sous les nouvelles clés");
+				}
+
+				Neo4jConnection.withTransaction(tx -> tx.run("MATCH (a:Person) WHERE a.legacyId IS NOT NULL REMOVE a.legacyId").consume());
+
+				// Les index en mémoire utilisaient peut-être les anciens identifiants
+				NameIndex.reset();
+				StatsService.reset();
+				TargetRanking.reset();
+			}
+			
+			markMigrated();
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			migrated = -1;
+		}
+
+		return migrated;
+	}
+
+	/**
+	 * @return true si la migration a déjà été faite complètement
+	 */
+	private static boolean isMigrated() {
+		Database meta = BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME);
+		
+		return meta != null && meta.get(null, new DatabaseEntry(MIGRATED_KEY), new DatabaseEntry(), LockMode.DEFAULT) == OperationStatus.SUCCESS;
+	}
+	
+	private static void markMigrated() {
+		BerkeleyConnection.getDatabase(BerkeleyConnection.META_DB_NAME).put(null, new DatabaseEntry(MIGRATED_KEY), new DatabaseEntry(new byte[] {1}));
+	}
+	
+	public static void main(String[] args) {
+		long migrated = migrate(new ProgressListener() {
+
+			@Override
+			public void progress(long done, long total, String message) {
+				System.out.println(message + " : " + done);
+			}
+		});
+
+		System.out.println(migrated >= 0 ? "Migration terminée (" + migrated + " personnes)" : "Échec de la migration");
+
+		ImageDAO.releaseStore();
+		BerkeleyConnection.releaseConnection();
+		Neo4jConnection.releaseConnection();
+	}
+}
@@ -0,0 +1,115 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache des photos selon l'identifiant de la personne, borné en octets (et non en nombre de photos) :
+ * les photos les moins récemment lues sont retirées lorsque la taille totale dépasse maxBytes.
+ *
+ * Une lecture qui a commencé avant une invalidation (sauvegarde, suppression) ne remet pas
+ * son résultat dans le cache : voir getVersion et put.
+ */
+public class ImageCache {
+	private final long maxBytes;
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private long size = 0;
+	private long version = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes taille maximale du cache, 0 pour ne rien garder
+	 */
+	public ImageCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param personId identifiant de la personne
+	 * @return la photo, ou null si elle n'est pas dans le cache
+	 */
+	public synchronized byte[] get(String personId) {
+		byte[] data = entries.get(personId);
+
+		if (data != null) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+		}
+
+		return data;
+	}
+
+	/**
+	 * Version à lire avant d'aller chercher une photo dans le stockage, puis à passer à put
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Ajoute une photo lue du stockage
+	 *
+	 * @param personId identifiant de la personne
+	 * @param data photo, ignorée si null
+	 * @param readVersion version obtenue avant la lecture ; si une invalidation a eu lieu depuis, la photo est ignorée
+	 */
+	public synchronized void put(String personId, byte[] data, long readVersion) {
+		if (data != null && readVersion == version && data.length <= maxBytes) {
+			byte[] previous = entries.put(personId, data);
+			size += data.length - (previous != null ? previous.length : 0);
+
+			Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+
+			while (size > maxBytes && iterator.hasNext()) {
+				size -= iterator.next().getValue().length;
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	public synchronized void invalidate(String personId) {
+		version++;
+		byte[] previous = entries.remove(personId);
+
+		if (previous != null) {
+			size -= previous.length;
+		}
+	}
+
+	public synchronized void clear() {
+		version++;
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return taille actuelle, en octets
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d Ko, %d succès, %d échecs, %d retraits", getSize() / 1024, getHits(), getMisses(), getEvictions());
+	}
+}
@@ -0,0 +1,303 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Accès aux photos des personnes.
+ * 
+ * Le stockage est choisi avec la propriété système persinteret.image.store :
+ * - berkeley (par défaut) : BerkeleyDB, photos dédupliquées selon leur contenu (voir BerkeleyImageStore)
+ * - segment : fichiers en ajout seulement, lus par projection en mémoire (voir SegmentImageStore)
+ * 
+ * Les photos et les vignettes lues passent par un cache borné en octets (voir ImageCache), dont la
+ * taille est donnée par persinteret.image.cacheBytes et persinteret.image.thumbnailCacheBytes.
+ * Les sauvegardes et suppressions retirent les photos touchées du cache.
+ */
+public class ImageDAO {
+	public static final int THUMBNAIL_SIZE = 96;
+	private static final String SEGMENT_PATH = "database/images/";
+	private static ImageStore store;
+	private static final ImageCache imageCache = new ImageCache(Long.getLong("persinteret.image.cacheBytes", 32L * 1024 * 1024));
+	private static final ImageCache thumbnailCache = new ImageCache(Long.getLong("persinteret.image.thumbnailCacheBytes", 4L * 1024 * 1024));
+
+	private static synchronized ImageStore getStore() {
+		if (store == null) {
+			if ("segment".equalsIgnoreCase(System.getProperty("persinteret.image.store"))) {
+				try {
+					store = new SegmentImageStore(new File(SEGMENT_PATH));
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+					store = new BerkeleyImageStore();
+				}
+			}
+			else {
+				store = new BerkeleyImageStore();
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Retourne la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return la photo, ou null si elle n'existe pas
+	 */
+	public static byte[] get(String personId) {
+		byte[] data = imageCache.get(personId);
+
+		if (data == null) {
+			long version = imageCache.getVersion();
+			data = getStore().get(personId);
+			imageCache.put(personId, data, version);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Retourne la vignette de la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return la vignette, ou null si la personne n'a pas de photo
+	 */
+	public static byte[] getThumbnail(String personId) {
+		byte[] data = thumbnailCache.get(personId);
+
+		if (data == null) {
+			long version = thumbnailCache.getVersion();
+			data = getStore().getThumbnail(personId);
+			thumbnailCache.put(personId, data, version);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Retourne les photos de plusieurs personnes en une seule lecture groupée
+	 *
+	 * @param personIds identifiants des personnes
+	 * @return les photos trouvées, selon l'identifiant de la personne
+	 */
+	public static Map<String, byte[]> getAll(Collection<String> personIds) {
+		return getAll(personIds, imageCache, false);
+	}
+
+	/**
+	 * Retourne les vignettes de plusieurs personnes (voir getAll)
+	 *
+	 * @param personIds identifiants des personnes
+	 * @return les vignettes trouvées, selon l'identifiant de la personne
+	 */
+	public static Map<String, byte[]> getThumbnails(Collection<String> personIds) {
+		return getAll(personIds, thumbnailCache, true);
+	}
+
+	/**
+	 * Seules les photos absentes du cache sont lues du stockage
+	 */
+	private static Map<String, byte[]> getAll(Collection<String> personIds, ImageCache cache, boolean thumbnails) {
+		Map<String, byte[]> images = new HashMap<String, byte[]>();
+		List<String> missing = new ArrayList<String>();
+
+		for (String personId : personIds) {
+			byte[] data = cache.get(personId);
+
+			if (data != null) {
+				images.put(personId, data);
+			}
+			else {
+				missing.add(personId);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			long version = cache.getVersion();
+			Map<String, byte[]> loaded = thumbnails ? getStore().getThumbnails(missing) : getStore().getAll(missing);
+
+			for (Map.Entry<String, byte[]> image : loaded.entrySet()) {
+				cache.put(image.getKey(), image.getValue(), version);
+			}
+
+			images.putAll(loaded);
+		}
+
+		return images;
+	}
+
+	/**
+	 * Sauvegarde (ou remplace) la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @param data photo, ignorée si null
+	 * @return true si succès, false sinon
+	 */
+	public static boolean save(String personId, byte[] data) {
+		Map<String, byte[]> images = new HashMap<String, byte[]>();
+		images.put(personId, data);
+
+		return saveAll(images);
+	}
+
+	/**
+	 * Sauvegarde plusieurs photos d'un coup.
+	 * Utilisé par l'importation en lot afin d'éviter une écriture sur disque par photo.
+	 *
+	 * @param images photos, selon l'identifiant de la personne (les photos null sont ignorées)
+	 * @return true si succès, false sinon
+	 */
+	public static boolean saveAll(Map<String, byte[]> images) {
+		boolean success = getStore().saveAll(images);
+
+		for (Map.Entry<String, byte[]> image : images.entrySet()) {
+			if (image.getValue() != null) {
+				imageCache.invalidate(image.getKey());
+				thumbnailCache.invalidate(image.getKey());
+			}
+		}
+
+		return success;
+	}
+
+	/**
+	 * Supprime la photo d'une personne
+	 *
+	 * @param personId identifiant de la personne
+	 * @return true si succès, false sinon
+	 */
+	public static boolean delete(String personId) {
+		boolean success = getStore().delete(personId);
+		imageCache.invalidate(personId);
+		thumbnailCache.invalidate(personId);
+
+		return success;
+	}
+
+	/**
+	 * Supprime toutes les photos
+	 *
+	 * @return true si succès, false sinon
+	 */
+	public static boolean deleteAll() {
+		boolean success = getStore().deleteAll();
+		imageCache.clear();
+		thumbnailCache.clear();
+
+		return success;
+	}
+
+	/**
+	 * Change la clé des photos sauvegardées sous un ancien identifiant (voir IdMigration)
+	 *
+	 * @param newIds nouvel identifiant, selon l'ancien
+	 * @return true si succès, false sinon
+	 */
+	public static boolean rekey(Map<String, String> newIds) {
+		boolean success = getStore().rekey(newIds);
+		imageCache.clear();
+		thumbnailCache.clear();
+
+		return success;
+	}
+
+	/**
+	 * Nombre de photos sauvegardées (une par personne), maintenu par le stockage :
+	 * sa lecture ne dépend pas du nombre de photos.
+	 *
+	 * @return nombre
+	 */
+	public static long count() {
+		return getStore().count();
+	}
+
+	/**
+	 * Met à niveau, par lots, les photos sauvegardées par une version précédente (à appeler au démarrage, 
+	 * avant toute lecture). Ne fait rien si c'est déjà fait.
+	 *
+	 * @param listener reçoit l'avancement, peut être null
+	 * @return nombre de photos mises à niveau
+	 */
+	public static long upgrade(ProgressListener listener) {
+		return getStore().upgrade(listener);
+	}
+
+	/**
+	 * @return le cache des photos (compteurs de succès, d'échecs et de retraits)
+	 */
+	public static ImageCache getImageCache() {
+		return imageCache;
+	}
+
+	/**
+	 * @return le cache des vignettes
+	 */
+	public static ImageCache getThumbnailCache() {
+		return thumbnailCache;
+	}
+
+	/**
+	 * Ferme le stockage (à la sortie de l'application)
+	 */
+	public static synchronized void releaseStore() {
+		imageCache.clear();
+		thumbnailCache.clear();
+
+		if (store != null) {
+			store.close();
+			store = null;
+		}
+	}
+
+	/**
+	 * Réduit une photo pour qu'elle tienne dans un carré de THUMBNAIL_SIZE pixels (proportions conservées)
+	 *
+	 * @param data photo dans un format lisible par ImageIO
+	 * @return la vignette en JPEG, ou null si la photo ne peut pas être décodée
+	 */
+	static byte[] createThumbnail(byte[] data) {
+		byte[] thumbnail = null;
+
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+
+			if (image != null) {
+				double scale = Math.min(1.0, (double)THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight()));
+				int width = Math.max(1, (int)Math.round(image.getWidth() * scale));
+				int height = Math.max(1, (int)Math.round(image.getHeight() * scale));
+
+				BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				Graphics2D g2d = output.createGraphics();
+				g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g2d.setColor(Color.WHITE);
+				g2d.fillRect(0, 0, width, height);
+				g2d.drawImage(image, 0, 0, width, height, null);
+				g2d.dispose();
+
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				ImageIO.write(output, "jpg", baos);
+				thumbnail = baos.toByteArray();
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return thumbnail;
+	}
+}
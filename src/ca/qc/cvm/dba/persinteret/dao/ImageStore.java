@@ -0,0 +1,70 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Stockage des photos (et de leurs vignettes) selon l'identifiant de la personne.
+ * Utilisé par ImageDAO, qui choisit l'implantation.
+ */
+interface ImageStore {
+
+	/**
+	 * @return la photo, ou null si la personne n'en a pas
+	 */
+	byte[] get(String personId);
+
+	/**
+	 * @return la vignette, ou null si la personne n'a pas de photo
+	 */
+	byte[] getThumbnail(String personId);
+
+	/**
+	 * @return les photos trouvées, selon l'identifiant de la personne
+	 */
+	Map<String, byte[]> getAll(Collection<String> personIds);
+
+	/**
+	 * @return les vignettes trouvées, selon l'identifiant de la personne
+	 */
+	Map<String, byte[]> getThumbnails(Collection<String> personIds);
+
+	/**
+	 * Sauvegarde (ou remplace) plusieurs photos d'un coup
+	 *
+	 * @param images photos, selon l'identifiant de la personne (les photos null sont ignorées)
+	 * @return true si succès, false sinon
+	 */
+	boolean saveAll(Map<String, byte[]> images);
+
+	boolean delete(String personId);
+
+	boolean deleteAll();
+
+	/**
+	 * Change la clé des photos sauvegardées sous un ancien identifiant (voir IdMigration).
+	 * Les photos sous un ancien identifiant absent de la correspondance sont supprimées.
+	 *
+	 * @param newIds nouvel identifiant, selon l'ancien
+	 * @return true si succès, false sinon
+	 */
+	boolean rekey(Map<String, String> newIds);
+
+	/**
+	 * Met à niveau les données créées par une version précédente du stockage, s'il y a lieu
+	 *
+	 * @param listener reçoit l'avancement, peut être null
+	 * @return nombre de photos mises à niveau
+	 */
+	long upgrade(ProgressListener listener);
+
+	/**
+	 * @return nombre de personnes ayant une photo
+	 */
+	long count();
+
+	/**
+	 * Libère les ressources (fichiers, fils d'exécution)
+	 */
+	void close();
+}
@@ -0,0 +1,180 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.StatementResult;
+
+/**
+ * Index des noms en mémoire, pour la recherche par préfixe (insensible à la casse).
+ * 
+ * Neo4j ne peut pas utiliser d'index pour toLower(a.name) STARTS WITH ..., et doit donc
+ * parcourir toutes les personnes à chaque recherche. Cet index garde les noms normalisés
+ * triés : un préfixe correspond à une plage contiguë de l'arbre, et seuls les identifiants
+ * trouvés sont ensuite lus dans Neo4j.
+ * 
+ * L'index est construit au premier appel, puis maintenu par PersonDAO (save/delete).
+ */
+public class NameIndex {
+	private static TreeMap<String, Entry> entries;
+	private static Map<String, String> keysById;
+	
+	/**
+	 * Construit l'index s'il ne l'est pas déjà. L'index n'est conservé que si la lecture a réussi :
+	 * sinon (ex. Neo4j pas encore démarré), il sera reconstruit au prochain appel.
+	 * 
+	 * @return true si l'index est prêt
+	 */
+	public static synchronized boolean load() {
+		if (entries == null) {
+			TreeMap<String, Entry> loadedEntries = new TreeMap<String, Entry>();
+			Map<String, String> loadedKeys = new HashMap<String, String>();
+			
+			try (Session session = Neo4jConnection.openSession()) {
+				StatementResult result = session.run("MATCH (a:Person) RETURN a.uid AS id, a.name AS name");
+				
+				while (result.hasNext()) {
+					Record record = result.next();
+					
+					if (!record.get("name").isNull()) {
+						add(loadedEntries, loadedKeys, record.get("id").asString(), record.get("name").asString());
+					}
+				}
+				
+				entries = loadedEntries;
+				keysById = loadedKeys;
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return entries != null;
+	}
+	
+	/**
+	 * Recherche des personnes dont le nom commence par le préfixe donné
+	 * 
+	 * @param prefix préfixe du nom, insensible à la casse
+	 * @param limit nombre maximal de résultats
+	 * @return identifiants des personnes, en ordre de nom (voir findByPrefix(String, String, String, int))
+	 */
+	public static List<String> findByPrefix(String prefix, int limit) {
+		return findByPrefix(prefix, null, null, limit);
+	}
+	
+	/**
+	 * Recherche des personnes dont le nom commence par le préfixe donné, 
+	 * en commençant après une personne (pagination).
+	 * 
+	 * L'ordre est celui de l'index : nom en minuscules, puis identifiant (comme ORDER BY toLower(a.name), a.uid).
+	 * La recherche se place directement au bon endroit de l'arbre et s'arrête après limit personnes :
+	 * son coût ne dépend pas du nombre de noms qui commencent par le préfixe.
+	 * 
+	 * @param prefix préfixe du nom, insensible à la casse
+	 * @param afterName nom de la dernière personne de la page précédente, null pour la première page
+	 * @param afterId identifiant de la dernière personne de la page précédente
+	 * @param limit nombre maximal de résultats
+	 * @return identifiants des personnes, vide si l'index n'a pas pu être construit
+	 */
+	public static synchronized List<String> findByPrefix(String prefix, String afterName, String afterId, int limit) {
+		List<String> ids = new ArrayList<String>();
+		
+		if (!load()) {
+			return ids;
+		}
+		
+		String normalized = normalize(prefix);
+		SortedMap<String, Entry> range = entries.tailMap(normalized, true);
+		
+		if (afterName != null) {
+			String after = toKey(afterName, afterId != null ? afterId : "");
+			
+			if (after.compareTo(normalized) >= 0) {
+				range = entries.tailMap(after, false);
+			}
+		}
+		
+		for (Map.Entry<String, Entry> entry : range.entrySet()) {
+			if (ids.size() >= limit || !entry.getKey().startsWith(normalized)) {
+				break;
+			}
+			
+			ids.add(entry.getValue().id);
+		}
+		
+		return ids;
+	}
+	
+	/**
+	 * Ajoute ou met à jour le nom d'une personne
+	 * 
+	 * @param id identifiant de la personne
+	 * @param name nom de la personne
+	 */
+	public static synchronized void put(String id, String name) {
+		if (entries != null) {
+			remove(id);
+			
+			if (name != null) {
+				add(entries, keysById, id, name);
+			}
+		}
+	}
+	
+	/**
+	 * Retire une personne de l'index
+	 * 
+	 * @param id identifiant de la personne
+	 */
+	public static synchronized void remove(String id) {
+		if (entries != null) {
+			String key = keysById.remove(id);
+			
+			if (key != null) {
+				entries.remove(key);
+			}
+		}
+	}
+	
+	/**
+	 * L'index sera reconstruit au prochain appel
+	 */
+	public static synchronized void reset() {
+		entries = null;
+		keysById = null;
+	}
+	
+	private static void add(TreeMap<String, Entry> entries, Map<String, String> keysById, String id, String name) {
+		String key = toKey(name, id);
+		entries.put(key, new Entry(id, name));
+		keysById.put(id, key);
+	}
+	
+	/**
+	 * L'identifiant fait partie de la clé, au cas où deux personnes auraient le même nom
+	 */
+	private static String toKey(String name, String id) {
+		return normalize(name) + '\u0000' + id;
+	}
+	
+	private static String normalize(String text) {
+		return text == null ? "" : text.toLowerCase();
+	}
+	
+	private static class Entry {
+		private final String id;
+		private final String name;
+		
+		public Entry(String id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+}
@@ -6,32 +6,136 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.Session;
 import org.neo4j.driver.StatementResult;
+import org.neo4j.driver.TransactionWork;
 import org.neo4j.driver.types.Node;
 import org.neo4j.driver.types.Path;
 import org.neo4j.driver.types.Relationship;
 
 public class Neo4jConnection {
-	private static Driver graphDB;
-	private static Session session;
+	private static final int MAX_POOL_SIZE = Integer.getInteger("persinteret.neo4j.maxPoolSize", 50);
+	private static final long ACQUISITION_TIMEOUT = Long.getLong("persinteret.neo4j.acquisitionTimeout", 60);
+	private static volatile Driver graphDB;
 
 	/**
-	 * Mthode permettant d'obtenir une connexion
-	 * @return une connexion
+	 * Travail  effectuer avec une session (voir withSession)
 	 */
-	public static Session getConnection() {		
+	public interface SessionWork<T> {
+		T execute(Session session) throws Exception;
+	}
+
+	/**
+	 * Mthode permettant d'obtenir le driver. Il est cr au premier appel et partag par tous
+	 * les fils d'excution : il gre un pool de connexions, dont la taille (persinteret.neo4j.maxPoolSize)
+	 * et le dlai maximal d'attente d'une connexion libre en secondes (persinteret.neo4j.acquisitionTimeout)
+	 * peuvent tre configurs par des proprits systme.
+	 * 
+	 * @return le driver
+	 */
+	public static Driver getDriver() {
 		if (graphDB == null) {
-			graphDB = GraphDatabase.driver( "bolt://localhost:7687", AuthTokens.basic( "neo4j", "AAAaaa111") );
-			session = graphDB.session();
+			synchronized (Neo4jConnection.class) {
+				if (graphDB == null) {
+					Config config = Config.builder()
+							.withMaxConnectionPoolSize(MAX_POOL_SIZE)
+							.withConnectionAcquisitionTimeout(ACQUISITION_TIMEOUT, TimeUnit.SECONDS)
+							.build();
+					Driver driver = GraphDatabase.driver( "bolt://localhost:7687", AuthTokens.basic( "neo4j", "AAAaaa111"), config);
+					createIndexes(driver);
+					graphDB = driver;
+				}
+			}
+		}
+		
+		return graphDB;
+	}
+	
+	/**
+	 * Mthode permettant d'ouvrir une nouvelle session. Une session n'est pas partageable entre
+	 * fils d'excution : elle doit servir  une seule unit de travail, puis tre ferme par l'appelant.
+	 * @return une nouvelle session
+	 */
+	public static Session openSession() {
+		return getDriver().session();
+	}
+	
+	/**
+	 * Excute un travail dans sa propre session, ferme  la fin
+	 * 
+	 * @param work le travail
+	 * @return le rsultat du travail
+	 */
+	public static <T> T withSession(SessionWork<T> work) throws Exception {
+		try (Session session = openSession()) {
+			return work.execute(session);
+		}
+	}
+	
+	/**
+	 * Excute un travail d'criture dans une transaction, valide  la fin (ou annule en cas d'erreur)
+	 * 
+	 * @param work le travail
+	 * @return le rsultat du travail
+	 */
+	public static <T> T withTransaction(TransactionWork<T> work) {
+		try (Session session = openSession()) {
+			return session.writeTransaction(work);
+		}
+	}
+	
+	/**
+	 * Excute un travail de lecture dans une transaction
+	 * 
+	 * @param work le travail
+	 * @return le rsultat du travail
+	 */
+	public static <T> T withReadTransaction(TransactionWork<T> work) {
+		try (Session session = openSession()) {
+			return session.readTransaction(work);
+		}
+	}
+	
+	public static void releaseConnection() {
+		synchronized (Neo4jConnection.class) {
+			if (graphDB != null) {
+				try {
+					graphDB.close();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+				
+				graphDB = null;
+			}
+		}
+	}
+	
+	/**
+	 * Index utilis pour trier et paginer la liste des personnes par nom
+	 */
+	private static void createIndexes(Driver driver) {
+		try (Session session = driver.session()) {
+			session.run("CREATE INDEX ON :Person(name)");
+		}
+		catch (Exception e) {
+			// L'index existe dj
 		}
 		
-		return session;
+		// Identifiant stable des personnes (voir PersonKeys), la contrainte cre aussi l'index
+		try (Session session = driver.session()) {
+			session.run("CREATE CONSTRAINT ON (a:Person) ASSERT a.uid IS UNIQUE");
+		}
+		catch (Exception e) {
+			// La contrainte existe dj
+		}
 	}
 	
 	/**
@@ -45,10 +149,9 @@ public class Neo4jConnection {
 	 * @return Une liste de noeuds et relations.
 	 */
 	public static List<Object> getPath(String query, Map<String, Object> params) {
-		Session session = Neo4jConnection.getConnection();
 		List<Object> resultList = new ArrayList<Object>();
 		
-		try {					
+		try (Session session = openSession()) {					
             StatementResult result = session.run( query, params);
             
             if (result.hasNext()) {
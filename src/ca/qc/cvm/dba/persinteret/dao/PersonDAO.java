@@ -1,9 +1,13 @@
 package ca.qc.cvm.dba.persinteret.dao;
 
 import java.text.DateFormat;
+import java.time.LocalDate;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 import com.sleepycat.je.*;
@@ -16,15 +20,25 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 
+import ca.qc.cvm.dba.persinteret.entity.Dashboard;
+import ca.qc.cvm.dba.persinteret.entity.ImageMode;
+import ca.qc.cvm.dba.persinteret.entity.PeoplePage;
 import ca.qc.cvm.dba.persinteret.entity.Person;
+import ca.qc.cvm.dba.persinteret.entity.StatsSnapshot;
 import org.neo4j.driver.Session;
 import org.neo4j.driver.StatementResult;
+import org.neo4j.driver.Transaction;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.Value;
+import org.reactivestreams.Publisher;
 
 import javax.xml.crypto.Data;
 
 public class PersonDAO {
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DELETE_BATCH_SIZE = 10000;
+	
+	private static ExecutorService dashboardExecutor;
 
 /**
 	 * M�thode permettant de retourner la liste des personnes de la base de donn�es.
@@ -43,60 +57,212 @@ public class PersonDAO {
 	 * @return la liste des personnes, selon le filtre si n�cessaire et filtre
 	 */
 	public static List<Person> getPeopleList(String filterText, boolean withImage, int limit) {
-		final List<Person> peopleList = new ArrayList<Person>();
+		return getPeopleList(filterText, ImageMode.of(withImage), limit);
+	}
 
-		Session session = Neo4jConnection.getConnection();
-		Database connection = BerkeleyConnection.getConnection();
+	/**
+	 * Liste des personnes (voir getPeopleList(String, boolean, int)), avec le choix de la photo à fournir :
+	 * pour une liste ou une galerie, ImageMode.THUMBNAIL ne lit que les vignettes.
+	 *
+	 * @param filterText champ filtre, peut être vide ou null
+	 * @param imageMode photos à fournir
+	 * @param limit permet de restreindre les résultats
+	 * @return la liste des personnes
+	 */
+	public static List<Person> getPeopleList(String filterText, ImageMode imageMode, int limit) {
+		final List<Person> peopleList = new ArrayList<Person>();
 
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			//query
 			Map<String, Object> params = new HashMap<String, Object>();
-			params.put("filterText", filterText != null ? filterText.toLowerCase() : "");
 			params.put("limit", limit);
 
+			boolean filtered = filterText != null && !filterText.isEmpty();
+
+			if (filtered) {
+				// Le filtre est résolu par l'index des noms en mémoire, Neo4j ne lit que les personnes trouvées
+				params.put("ids", NameIndex.findByPrefix(filterText, limit));
+			}
+
 			String query = String.format(
 					"MATCH (a:Person) %sRETURN a.name AS name, a.codeName AS codeName, a.status AS status, a.dateOfBirth AS dob, "
-							+ "a.connexions AS connexions, a.imageData AS imageData, id(a) AS id "
-							+ "ORDER BY a.name ASC LIMIT $limit",
-					(filterText != null && !filterText.isEmpty() ? "WHERE toLower(a.name) STARTS WITH $filterText " : "")
+							+ "a.connexions AS connexions, a.uid AS id "
+							+ "ORDER BY %s LIMIT $limit",
+					(filtered ? "WHERE a.uid IN $ids " : ""),
+					(filtered ? "toLower(a.name) ASC, a.uid ASC" : "a.name ASC")
 			);
 
 			StatementResult result = session.run(query, params);
 
 			while (result.hasNext()) {
-				Record record = result.next();
-				List<String> connexions = record.get("connexions").asList(Value::asString);
+				peopleList.add(toPerson(result.next(), imageMode));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 
-				byte[] retData = null;
-				if(withImage) {
-					String key = String.valueOf(record.get("id").asInt());
-					DatabaseEntry theKey = new DatabaseEntry(key.getBytes("UTF-8"));
-					DatabaseEntry theData = new DatabaseEntry();
+		return peopleList;
+	}
 
-					if (connection.get(null, theKey, theData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-						retData = theData.getData();
-					}
-					//doesnt exist
-				}
+	/**
+	 * Pagination de la liste des personnes, par clé (keyset).
+	 *
+	 * Au lieu de sauter les N premières personnes (SKIP), la page commence directement après
+	 * la dernière personne de la page précédente :
+	 * - sans filtre, par un parcours de l'index sur le nom (la condition sur a.name, même pour la
+	 *   première page, permet à Neo4j de s'en servir pour le tri)
+	 * - avec un filtre, par l'index des noms en mémoire (NameIndex), qui se place après la dernière personne
+	 * Le coût d'une page dépend de sa taille, et non de sa position dans la liste.
+	 *
+	 * @param lastName nom de la dernière personne de la page précédente (PeoplePage.getLastName()), null pour la première page
+	 * @param lastId identifiant de la dernière personne de la page précédente (PeoplePage.getLastId())
+	 * @param filterText champ filtre, peut être vide ou null
+	 * @param imageMode photos à fournir (ImageMode.THUMBNAIL pour une liste)
+	 * @param pageSize nombre de personnes par page
+	 * @return la page demandée
+	 */
+	public static PeoplePage getPeopleListAfter(String lastName, String lastId, String filterText, ImageMode imageMode, int pageSize) {
+		try (Session session = Neo4jConnection.openSession()) {
+			return getPeopleListAfter(session, lastName, lastId, filterText, imageMode, pageSize);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 
+		return new PeoplePage(new ArrayList<Person>(), false);
+	}
+
+	/**
+	 * Lecture d'une page dans une session existante ; les erreurs sont laissées à l'appelant (voir PersonPublisher)
+	 */
+	static PeoplePage getPeopleListAfter(Session session, String lastName, String lastId, String filterText, ImageMode imageMode, int pageSize) {
+		final List<Person> peopleList = new ArrayList<Person>();
+		boolean hasNextPage = false;
+
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("lastName", lastName);
+		params.put("lastId", lastId != null ? lastId : "");
+		// Une personne de plus, pour savoir s'il y a une page suivante
+		params.put("limit", pageSize + 1);
+
+		String where = "";
+		// Avec un filtre, la page suit l'ordre de l'index des noms (insensible à la casse)
+		String orderBy = "a.name ASC, a.uid ASC";
+
+		if (filterText != null && !filterText.isEmpty()) {
+			params.put("ids", NameIndex.findByPrefix(filterText, lastName, lastId, pageSize + 1));
+			where = "WHERE a.uid IN $ids ";
+			orderBy = "toLower(a.name) ASC, a.uid ASC";
+		}
+		else if (lastName != null) {
+			where = "WHERE a.name >= $lastName AND (a.name > $lastName OR a.uid > $lastId) ";
+		}
+		else {
+			// Sans condition sur a.name, Neo4j lirait toutes les personnes pour les trier
+			where = "WHERE a.name >= '' ";
+		}
+
+		StatementResult result = session.run("MATCH (a:Person) " + where
+				+ "RETURN a.name AS name, a.codeName AS codeName, a.status AS status, a.dateOfBirth AS dob, "
+				+ "a.connexions AS connexions, a.uid AS id "
+				+ "ORDER BY " + orderBy + " LIMIT $limit", params);
 
-				Person person = new Person(
-						String.valueOf(record.get("id").asInt()),
-						record.get("name").asString(),
-						record.get("codeName").asString(),
-						record.get("status").asString(),
-						record.get("dob").asString(),
-						connexions,
-						retData
-				);
+		while (result.hasNext()) {
+			Record record = result.next();
 
-				peopleList.add(person);
+			if (peopleList.size() < pageSize) {
+				peopleList.add(toPerson(record, imageMode));
+			}
+			else {
+				hasNextPage = true;
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
 
-		return peopleList;
+		return new PeoplePage(peopleList, hasNextPage);
+	}
+
+	/**
+	 * Liste de toutes les personnes (selon le filtre), en ordre de nom, produite au fur et à mesure
+	 * de la demande de l'abonné plutôt qu'accumulée en mémoire (voir PersonPublisher)
+	 *
+	 * @param filterText champ filtre, peut être vide ou null
+	 * @param imageMode photos à fournir avec chaque personne
+	 * @return un Publisher; chaque abonnement relance la requête
+	 */
+	public static Publisher<Person> streamPeople(String filterText, ImageMode imageMode) {
+		return new PersonPublisher(filterText, imageMode);
+	}
+
+	static Person toPerson(Record record, ImageMode imageMode) {
+		List<String> connexions = record.get("connexions").asList(Value::asString);
+
+		Person person = new Person(
+				record.get("id").asString(),
+				record.get("name").asString(),
+				record.get("codeName").asString(),
+				record.get("status").asString(),
+				record.get("dob").asString(),
+				connexions,
+				null
+		);
+
+		// Les photos ne sont lues que si elles sont demandées (voir prefetchImages et prefetchThumbnails).
+		// Avec les vignettes, la photo complète reste disponible (ex. écran de modification)
+		if (imageMode != ImageMode.NONE) {
+			person.setImageLoader(ImageDAO::get);
+		}
+
+		if (imageMode == ImageMode.THUMBNAIL) {
+			person.setThumbnailLoader(ImageDAO::getThumbnail);
+		}
+
+		return person;
+	}
+
+	/**
+	 * Lit en lot les photos qui n'ont pas encore été chargées.
+	 * Utile lorsque l'on sait d'avance que toutes les photos d'une liste seront affichées.
+	 *
+	 * @param people personnes obtenues avec getPeopleList(..., true, ...)
+	 */
+	public static void prefetchImages(List<Person> people) {
+		Map<String, Person> byId = new HashMap<String, Person>();
+
+		for (Person person : people) {
+			if (!person.isImageLoaded()) {
+				byId.put(person.getId(), person);
+			}
+		}
+
+		if (!byId.isEmpty()) {
+			Map<String, byte[]> images = ImageDAO.getAll(byId.keySet());
+
+			for (Person person : byId.values()) {
+				person.setImageData(images.get(person.getId()));
+			}
+		}
+	}
+
+	/**
+	 * Lit en lot les vignettes qui n'ont pas encore été chargées.
+	 *
+	 * @param people personnes obtenues avec ImageMode.THUMBNAIL
+	 */
+	public static void prefetchThumbnails(List<Person> people) {
+		Map<String, Person> byId = new HashMap<String, Person>();
+
+		for (Person person : people) {
+			if (!person.isThumbnailLoaded()) {
+				byId.put(person.getId(), person);
+			}
+		}
+
+		if (!byId.isEmpty()) {
+			Map<String, byte[]> thumbnails = ImageDAO.getThumbnails(byId.keySet());
+
+			for (Person person : byId.values()) {
+				person.setThumbnailData(thumbnails.get(person.getId()));
+			}
+		}
 	}
 
 	/**
@@ -119,55 +285,114 @@ public class PersonDAO {
 	 */
 	public static boolean save(Person person) {
 		boolean success = false;
-		Session session = Neo4jConnection.getConnection();
-		Database connection = BerkeleyConnection.getConnection();
-		try {
-			String nodeId = person.getId(); // Assuming getId() fetches the internal Neo4j ID
+		try (Session session = Neo4jConnection.openSession()) {
+			String nodeId = person.getId();
+			String key = null;
+			List<String> affected = new ArrayList<String>();
+			byte[] imageData = person.getImageData();
+			byte[] previousImage = null;
+			boolean imageSaved = false;
+
+			// La transaction est validée à sa fermeture si tx.success() a été appelée, annulée sinon
+			try (Transaction tx = session.beginTransaction()) {
+				Map<String, Object> params = new HashMap<String, Object>();
+				params.put("p1", person.getName());
+				params.put("p2", person.getCodeName());
+				params.put("p3", person.getDateOfBirth());
+				params.put("p4", person.getStatus());
+				params.put("p5", person.getConnexions());
+
+				String cypherQuery;
+				if (nodeId != null) {
+					// Node exists, update it
+					cypherQuery = "MATCH (a:Person {uid: $uid}) " +
+							"WITH a, [(a)-[:CONNEXION]-(n:Person) | n.uid] AS neighbours, coalesce(a.connexions, []) AS previous " +
+							"SET a.name = $p1, a.codeName = $p2, a.dateOfBirth = $p3, a.status = $p4, a.connexions = $p5 " +
+							"RETURN a.uid as id, neighbours, previous";
+					params.put("uid", nodeId);
+				} else {
+					// Node does not exist, create it with a new stable identifier
+					cypherQuery = "CREATE (a:Person {uid: $uid, name: $p1, codeName: $p2, dateOfBirth: $p3, status: $p4, connexions: $p5}) " +
+							"RETURN a.uid as id, [] AS neighbours, [] AS previous";
+					params.put("uid", PersonKeys.newId());
+				}
+				StatementResult result = tx.run(cypherQuery, params);
+				List<String> connexions = person.getConnexions() != null ? person.getConnexions() : new ArrayList<String>();
+				List<String> removedNames = new ArrayList<String>();
+				if (result.hasNext()) {
+					Record record = result.next();
+					key = record.get("id").asString();
+					affected.add(key);
+
+					// Voisins avant la modification, leur score de cible peut changer
+					for (Object neighbour : record.get("neighbours").asList()) {
+						affected.add(neighbour.toString());
+					}
 
-			Map<String, Object> params = new HashMap<String, Object>();
-			params.put("p1", person.getName());
-			params.put("p2", person.getCodeName());
-			params.put("p3", person.getDateOfBirth());
-			params.put("p4", person.getStatus());
-			params.put("p5", person.getConnexions());
+					// Noms retirés de la liste depuis la dernière sauvegarde
+					for (Object previous : record.get("previous").asList()) {
+						if (!connexions.contains(previous.toString())) {
+							removedNames.add(previous.toString());
+						}
+					}
+				}
 
-			String cypherQuery;
-			if (nodeId != null) {
-				// Node exists, update it
-				int nodeIdInt = Integer.parseInt(nodeId);
-				cypherQuery = "MATCH (a) WHERE id(a) = $nodeId " +
-						"SET a.name = $p1, a.codeName = $p2, a.dateOfBirth = $p3, a.status = $p4, a.connexions = $p5 " +
-						"RETURN id(a) as id";
-				params.put("nodeId", nodeIdInt);
-			} else {
-				// Node does not exist, create it
-				cypherQuery = "CREATE (a:Person {name: $p1, codeName: $p2, dateOfBirth: $p3, status: $p4, connexions: $p5}) " +
-						"RETURN id(a) as id";
-			}
-			StatementResult result = session.run(cypherQuery, params);
-			int keyInt = 0;
-			if (result.hasNext()) {
-				Record record = result.next();
-				keyInt = record.get("id").asInt();
-				String key = String.valueOf(keyInt);
+				if (key == null) {
+					// La personne a été supprimée entre-temps
+					tx.failure();
+					return false;
+				}
+
+				params.put("connexions", connexions);
+				params.put("removedNames", removedNames);
+
+				// Synchronisation des connexions en une seule requête : seules les relations retirées
+				// sont supprimées et seules les nouvelles sont créées, les autres ne sont pas touchées.
+				// Une connexion va dans les deux sens : la relation est lue sans direction, une seule
+				// est créée par paire (MERGE sans direction), et retirer un nom supprime aussi la relation
+				// dans l'autre sens (créée par la fiche de l'autre personne)
+				tx.run("MATCH (a:Person {uid: $uid}) "
+						+ "WITH a, [(a)-[r:CONNEXION]->(b:Person) WHERE NOT b.name IN $connexions | r] "
+						+ "+ [(a)<-[r:CONNEXION]-(b:Person) WHERE b.name IN $removedNames | r] AS removed "
+						+ "FOREACH (r IN removed | DELETE r) "
+						+ "WITH a, [(a)-[:CONNEXION]-(b:Person) | b.name] AS current "
+						+ "WITH a, [connName IN $connexions WHERE NOT connName IN current] AS added "
+						+ "UNWIND added AS connName "
+						+ "MATCH (b:Person {name: connName}) WHERE b <> a "
+						+ "MERGE (a)-[:CONNEXION]-(b)", params).consume();
+
+				// La photo est écrite (une transaction Berkeley) avant de valider le graphe :
+				// si elle échoue, la transaction Neo4j est simplement annulée
+				if (imageData != null) {
+					previousImage = nodeId != null ? ImageDAO.get(key) : null;
+
+					if (!ImageDAO.save(key, imageData)) {
+						tx.failure();
+						return false;
+					}
 
-				// AJOUTER IMAGE:
-				byte[] data = person.getImageData();
+					imageSaved = true;
+				}
 
-				DatabaseEntry theKey = new DatabaseEntry(key.getBytes("UTF-8"));
-				DatabaseEntry theData = new DatabaseEntry(data);
-				connection.put(null, theKey, theData);
+				tx.success();
 			}
-			params.put("nodeId", keyInt);
-			session.run("MATCH (a:Person)-[r:CONNEXION]->(b:Person) WHERE id(a) = $nodeId DELETE r",params);
-			if (!person.getConnexions().isEmpty()) {
-				for (String connName : person.getConnexions()) {
-					params.put("connName", connName);
-					session.run("MATCH (a:Person), (b:Person) WHERE id(a) = $nodeId AND b.name = $connName "
-									+ "MERGE (a)-[:CONNEXION]->(b)",params);
+			catch (Exception e) {
+				// La validation (à la fermeture) a échoué : le graphe n'a pas été modifié, la photo précédente est remise
+				if (imageSaved) {
+					if (previousImage != null) {
+						ImageDAO.save(key, previousImage);
+					}
+					else {
+						ImageDAO.delete(key);
+					}
 				}
+
+				throw e;
 			}
 
+			StatsService.onSave(key, person);
+			NameIndex.put(key, person.getName());
+			TargetRanking.refresh(affected);
 			success = true;
 		}
 		catch (Exception e) {
@@ -176,7 +401,151 @@ public class PersonDAO {
 
 		return success;
 	}
-	
+
+	/**
+	 * Importation en lot de plusieurs personnes (voir saveAll(Iterator, int, ProgressListener))
+	 *
+	 * @param people personnes à sauvegarder
+	 * @return nombre de personnes sauvegardées
+	 */
+	public static int saveAll(List<Person> people) {
+		return saveAll(people.iterator(), DEFAULT_BATCH_SIZE, null);
+	}
+
+	/**
+	 * Importation en lot de plusieurs personnes.
+	 *
+	 * Les fiches sont créées par lots de batchSize avec une seule requête UNWIND paramétrée par lot,
+	 * et les photos de chaque lot sont écrites dans une seule transaction BerkeleyDB. Les connexions
+	 * sont créées une fois toutes les fiches insérées, afin qu'une connexion vers une personne
+	 * importée plus loin dans le flux ne soit pas perdue.
+	 *
+	 * Les personnes ayant déjà un id sont des mises à jour et passent par save().
+	 * L'environnement BerkeleyDB utilise le profil BULK_LOAD pendant l'importation.
+	 *
+	 * @param people flux des personnes à sauvegarder
+	 * @param batchSize nombre de personnes par lot
+	 * @param listener reçoit le débit de chaque lot, peut être null
+	 * @return nombre de personnes sauvegardées
+	 */
+	public static int saveAll(Iterator<Person> people, int batchSize, ProgressListener listener) {
+		int saved = 0;
+		List<Map<String, Object>> pendingConnexions = new ArrayList<Map<String, Object>>();
+		List<Person> batch = new ArrayList<Person>(batchSize);
+		// Les photos du lot sont écrites sans fsync par commit, le profil précédent est rétabli à la fin
+		BerkeleyProfile previousProfile = BerkeleyConnection.useProfile(BerkeleyProfile.BULK_LOAD);
+
+		try {
+			while (people.hasNext()) {
+				Person person = people.next();
+
+				if (person.getId() != null) {
+					if (save(person)) {
+						saved++;
+					}
+				}
+				else {
+					batch.add(person);
+				}
+
+				if (batch.size() >= batchSize || (!people.hasNext() && !batch.isEmpty())) {
+					long start = System.currentTimeMillis();
+					List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+
+					for (int i = 0; i < batch.size(); i++) {
+						Person p = batch.get(i);
+						Map<String, Object> row = new HashMap<String, Object>();
+						row.put("idx", i);
+						row.put("uid", PersonKeys.newId());
+						row.put("name", p.getName());
+						row.put("codeName", p.getCodeName());
+						row.put("dateOfBirth", p.getDateOfBirth());
+						row.put("status", p.getStatus());
+						row.put("connexions", p.getConnexions() != null ? p.getConnexions() : new ArrayList<String>());
+						rows.add(row);
+					}
+
+					final Map<String, Object> params = new HashMap<String, Object>();
+					params.put("rows", rows);
+
+					// Une seule transaction par lot
+					List<Record> records = Neo4jConnection.withTransaction(tx -> tx.run("UNWIND $rows AS row "
+							+ "CREATE (a:Person {uid: row.uid, name: row.name, codeName: row.codeName, dateOfBirth: row.dateOfBirth, "
+							+ "status: row.status, connexions: row.connexions}) "
+							+ "RETURN row.idx AS idx, a.uid AS id", params).list());
+
+					Map<String, byte[]> images = new HashMap<String, byte[]>();
+					int batchConnexions = pendingConnexions.size();
+
+					for (Record record : records) {
+						Person p = batch.get(record.get("idx").asInt());
+						String id = record.get("id").asString();
+						p.setId(id);
+						images.put(id, p.getImageData());
+
+						if (p.getConnexions() != null && !p.getConnexions().isEmpty()) {
+							Map<String, Object> connexionRow = new HashMap<String, Object>();
+							connexionRow.put("id", id);
+							connexionRow.put("connexions", p.getConnexions());
+							pendingConnexions.add(connexionRow);
+						}
+					}
+
+					if (ImageDAO.saveAll(images)) {
+						saved += batch.size();
+
+						for (Person p : batch) {
+							StatsService.onSave(p.getId(), p);
+							NameIndex.put(p.getId(), p.getName());
+						}
+
+						long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+						if (listener != null) {
+							listener.progress(saved, -1, String.format("Lot de %d fiches en %d ms (%.0f fiches/s)",
+									batch.size(), elapsed, batch.size() * 1000.0 / elapsed));
+						}
+					}
+					else {
+						// Les photos du lot n'ont pas été écrites (transaction Berkeley annulée) :
+						// comme dans save(), les fiches du lot sont retirées du graphe
+						final Map<String, Object> failed = new HashMap<String, Object>();
+						failed.put("ids", new ArrayList<String>(images.keySet()));
+						Neo4jConnection.withTransaction(tx -> tx.run("MATCH (a:Person) WHERE a.uid IN $ids DETACH DELETE a", failed).consume());
+						pendingConnexions.subList(batchConnexions, pendingConnexions.size()).clear();
+
+						if (listener != null) {
+							listener.progress(saved, -1, String.format("Lot de %d fiches annulé : échec de l'écriture des photos", batch.size()));
+						}
+					}
+
+					batch.clear();
+				}
+			}
+
+			for (int i = 0; i < pendingConnexions.size(); i += batchSize) {
+				final Map<String, Object> params = new HashMap<String, Object>();
+				params.put("rows", pendingConnexions.subList(i, Math.min(i + batchSize, pendingConnexions.size())));
+				Neo4jConnection.withTransaction(tx -> tx.run("UNWIND $rows AS row "
+						+ "MATCH (a:Person {uid: row.id}) "
+						+ "UNWIND row.connexions AS connName "
+						+ "MATCH (b:Person {name: connName}) WHERE b <> a "
+						+ "MERGE (a)-[:CONNEXION]-(b)", params).consume());
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			BerkeleyConnection.useProfile(previousProfile);
+		}
+
+		// Une importation touche une grande partie du graphe, le classement sera recalculé au complet
+		TargetRanking.reset();
+
+		return saved;
+	}
+
 	/**
 	 * Suppression des donn�es/fiche d'une personne
 	 * 
@@ -185,20 +554,30 @@ public class PersonDAO {
 	 */
 	public static boolean delete(Person person) {
 		boolean success = false;
-		Session session = Neo4jConnection.getConnection();
-		Database connection = BerkeleyConnection.getConnection();
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			String nodeId = person.getId();
 
 			if (nodeId != null) {
-				int nodeIdInt = Integer.parseInt(nodeId);
 				Map<String, Object> params = new HashMap<String, Object>();
-				params.put("nodeId", nodeIdInt);
-				session.run("MATCH (a:Person) WHERE id(a) = $nodeId DETACH DELETE a", params);
-				DatabaseEntry theKey = new DatabaseEntry(nodeId.getBytes("UTF-8"));
-				connection.delete(null, theKey);
+				params.put("uid", nodeId);
+				StatementResult result = session.run("MATCH (a:Person {uid: $uid}) "
+						+ "WITH a, [(a)-[:CONNEXION]-(n:Person) | n.uid] AS neighbours "
+						+ "DETACH DELETE a RETURN neighbours", params);
 
-				success = true;
+				List<String> affected = new ArrayList<String>();
+				affected.add(nodeId);
+
+				if (result.hasNext()) {
+					for (Object neighbour : result.next().get("neighbours").asList()) {
+						affected.add(neighbour.toString());
+					}
+				}
+
+				StatsService.onDelete(nodeId);
+				NameIndex.remove(nodeId);
+				TargetRanking.refresh(affected);
+
+				success = ImageDAO.delete(nodeId);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -213,51 +592,127 @@ public class PersonDAO {
 	 * @return true si succ�s, false sinon
 	 */
 	public static boolean deleteAll() {
-		boolean success = false;
-		Session session = Neo4jConnection.getConnection();
-		Database connection = BerkeleyConnection.getConnection();
-
-		Cursor myCursor = null;
-		Transaction txn = null;
+		return deleteAll(null);
+	}
 
+	/**
+	 * Suppression totale, avec suivi de l'avancement.
+	 *
+	 * Les photos sont supprimées d'un coup (voir BerkeleyConnection.truncate), puis le graphe
+	 * est supprimé par lots de DELETE_BATCH_SIZE noeuds, chacun dans sa propre transaction :
+	 * la mémoire utilisée par Neo4j ne dépend donc pas de la taille du graphe.
+	 *
+	 * @param listener reçoit le nombre de noeuds supprimés après chaque lot, peut être null
+	 * @return true si succès, false sinon
+	 */
+	public static boolean deleteAll(ProgressListener listener) {
+		boolean success = false;
 		try {
-			txn = connection.getEnvironment().beginTransaction(null, null);
-			myCursor = connection.openCursor(txn, null);
-			try{
-			DatabaseEntry foundKey = new DatabaseEntry();
-			DatabaseEntry foundData = new DatabaseEntry();
-
-			while (myCursor.getNext(foundKey, foundData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				myCursor.delete();
-			}
-			// Delete all
-		} finally {
-			myCursor.close();  
-		}
+			if (ImageDAO.deleteAll()) {
+				final Map<String, Object> params = new HashMap<String, Object>();
+				params.put("limit", DELETE_BATCH_SIZE);
+				long deleted = 0;
+				long count;
+
+				do {
+					long start = System.currentTimeMillis();
+					count = Neo4jConnection.withTransaction(tx -> tx.run("MATCH (n) WITH n LIMIT $limit "
+							+ "DETACH DELETE n RETURN count(*) AS deleted", params).single().get("deleted").asLong());
+					deleted += count;
+
+					if (listener != null && count > 0) {
+						listener.progress(deleted, -1, String.format("Lot de %d noeuds supprimé en %d ms",
+								count, System.currentTimeMillis() - start));
+					}
+				}
+				while (count > 0);
 
-			txn.commit();
-			session.run("MATCH (n) OPTIONAL MATCH (n)-[r]-() DELETE n,r");
-			success = true;
-		} catch (Exception e) {
-			if (txn != null) {
-				txn.abort(); 
+				StatsService.reset();
+				TargetRanking.reset();
+				NameIndex.reset();
+				success = true;
 			}
+		} catch (Exception e) {
 			e.printStackTrace();
-		} finally {
-
 		}
 
 		return success;
 	}
 	
+	/**
+	 * Toutes les statistiques du tableau de bord en un seul aller-retour vers Neo4j :
+	 * un seul parcours des personnes calcule le total, le nombre par statut, la somme des années
+	 * de naissance et la personne la plus jeune. Celle-ci est le maximum de « date + nom » : la date
+	 * (toujours YYYY-MM-DD) passe en premier dans la comparaison, et le nom suit sans deuxième lecture.
+	 * 
+	 * Le nombre de photos (BerkeleyDB) et la prochaine cible sont obtenus en parallèle,
+	 * le temps total est donc celui de la plus lente des trois lectures.
+	 * 
+	 * Utilisé seulement tant que StatsService n'est pas chargé (voir MngApplication.getDashboard).
+	 * 
+	 * @return les statistiques, null en cas d'erreur
+	 */
+	public static Dashboard getDashboard() {
+		CompletableFuture<Long> photoCount = CompletableFuture.supplyAsync(ImageDAO::count, getDashboardExecutor());
+		CompletableFuture<String> nextTarget = CompletableFuture.supplyAsync(PersonDAO::getNextTargetName, getDashboardExecutor());
+		
+		try (Session session = Neo4jConnection.openSession()) {
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("datePattern", "\\d{4}-\\d{2}-\\d{2}");
+			
+			Record record = session.run("MATCH (p:Person) "
+					+ "WITH p, CASE WHEN p.dateOfBirth =~ $datePattern THEN p.dateOfBirth END AS dob "
+					+ "WITH p.status AS status, count(p) AS total, sum(toInteger(substring(dob, 0, 4))) AS yearSum, "
+					+ "count(dob) AS yearCount, max(dob + p.name) AS latest "
+					+ "WITH collect({status: status, total: total}) AS statuses, sum(total) AS total, "
+					+ "sum(yearSum) AS yearSum, sum(yearCount) AS yearCount, max(latest) AS latest "
+					+ "RETURN statuses, total, yearSum, yearCount, substring(latest, 10) AS youngest", params).single();
+			
+			Map<String, Long> statusCounts = new HashMap<String, Long>();
+			
+			for (Object row : record.get("statuses").asList()) {
+				Map<?, ?> status = (Map<?, ?>) row;
+				
+				if (status.get("status") != null) {
+					statusCounts.put(status.get("status").toString(), ((Number) status.get("total")).longValue());
+				}
+			}
+			
+			long yearCount = record.get("yearCount").asLong();
+			int averageAge = yearCount > 0 ? 
+					(int) Math.round(LocalDate.now().getYear() - (double) record.get("yearSum").asLong() / yearCount) : 0;
+			
+			StatsSnapshot stats = new StatsSnapshot(record.get("total").asLong(), photoCount.join(), statusCounts, averageAge, 
+					record.get("youngest").isNull() ? "--" : record.get("youngest").asString());
+			
+			return new Dashboard(stats, nextTarget.join());
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		
+		return null;
+	}
+	
+	private static synchronized ExecutorService getDashboardExecutor() {
+		if (dashboardExecutor == null) {
+			dashboardExecutor = Executors.newFixedThreadPool(2, r -> {
+				Thread thread = new Thread(r, "dashboard");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		return dashboardExecutor;
+	}
+	
 	/**
 	 * M�thode qui retourne le ratio de personnes en libert� par rapport au nombre total de fiches.
 	 * 
 	 * @return ratio entre 0 et 100
 	 */
 	public static int getFreeRatio() {
-		Session session = Neo4jConnection.getConnection();
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			// Exécutez une requête pour compter le total de personnes et celles en liberté
 			StatementResult result = session.run("MATCH (p:Person) RETURN count(p) as total, sum(CASE WHEN p.status = 'Libre' THEN 1 ELSE 0 END) as libre");
 
@@ -284,23 +739,7 @@ public class PersonDAO {
 	 * @return nombre
 	 */
 	public static long getPhotoCount() {
-		int photoCount = 0;
-		Cursor myCursor = null;
-		Database connection = BerkeleyConnection.getConnection();
-		try {
-			myCursor = connection.openCursor(null, null);
-			DatabaseEntry foundKey = new DatabaseEntry();
-			DatabaseEntry foundData = new DatabaseEntry();
-			while (myCursor.getNext(foundKey, foundData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				photoCount++;
-			}
-		} finally {
-			if (myCursor != null) {
-				myCursor.close();
-			}
-		}
-
-		return photoCount;
+		return ImageDAO.count();
 	}
 	
 	/**
@@ -309,8 +748,7 @@ public class PersonDAO {
 	 */
 	public static long getPeopleCount() {
 
-		Session session = Neo4jConnection.getConnection();
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			StatementResult result = session.run("MATCH (p:Person) RETURN count(p) as total");
 
 			if (result.hasNext()) {
@@ -334,8 +772,7 @@ public class PersonDAO {
 	 * @return nom de la personne
 	 */
 	public static String getYoungestPerson() {
-		Session session = Neo4jConnection.getConnection();
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			StatementResult result = session.run("MATCH (p:Person) RETURN p.name AS name ORDER BY p.dateOfBirth DESC LIMIT 1");
 
 			if (result.hasNext()) {
@@ -356,21 +793,20 @@ public class PersonDAO {
 	 * @return nom de la personne
 	 */
 	public static String getNextTargetName() {
-		Session session = Neo4jConnection.getConnection();
-		try {
-			StatementResult result = session.run("MATCH (p:Person {status: 'Libre'})-[:CONNEXION]-(m:Person) " +
-					"WHERE m.status IN ['Disparu', 'Mort'] " +
-					"WITH p, COUNT(m) AS connectedCount " +
-					"RETURN p.name AS name, connectedCount " +
-					"ORDER BY connectedCount DESC LIMIT 1");
-			if (result.hasNext()) {
-				Record record = result.next();
-				return record.get("name").asString();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return "--";
+		List<String> targets = TargetRanking.getTopTargets(1);
+
+		return targets.isEmpty() ? "--" : targets.get(0);
+	}
+
+	/**
+	 * Les k prochaines personnes à investiguer (voir getNextTargetName), 
+	 * selon le classement maintenu par TargetRanking
+	 *
+	 * @param k nombre de personnes voulues
+	 * @return nom des personnes, de la plus importante à la moins importante
+	 */
+	public static List<String> getTopTargets(int k) {
+		return TargetRanking.getTopTargets(k);
 	}
 	
 	/**
@@ -380,8 +816,7 @@ public class PersonDAO {
 	 */
 	public static int getAverageAge() {
 		int resultat = 0;
-		Session session = Neo4jConnection.getConnection();
-		try {
+		try (Session session = Neo4jConnection.openSession()) {
 			StatementResult result = session.run("MATCH (p:Person) WHERE p.dateOfBirth IS NOT NULL " +
 					"RETURN round(avg(date().year - date(p.dateOfBirth).year)) AS averageAge");
 			if (result.hasNext()) {
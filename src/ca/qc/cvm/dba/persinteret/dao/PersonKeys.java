@@ -0,0 +1,76 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Identifiant stable des personnes : un UUID gardé dans la propriété uid du noeud (unique).
+ * Contrairement à l'identifiant interne de Neo4j, il n'est jamais réutilisé après une suppression.
+ * 
+ * Les UUID sont ordonnés dans le temps (format de la version 7) : l'heure de création en millisecondes
+ * occupe les 48 bits de poids fort, suivie d'un compteur pour les identifiants créés dans la même
+ * milliseconde. Chaque nouvel identifiant est donc plus grand que le précédent.
+ * 
+ * Dans BerkeleyDB, la clé est l'UUID sur 16 octets (gros-boutiste) : toutes les clés ont la même
+ * longueur, et l'ordre des clés est l'ordre de création. Les nouvelles personnes sont ajoutées à la fin
+ * de l'arbre et un parcours par curseur suit l'ordre d'insertion (de même que l'ordre des uid dans Neo4j).
+ */
+final class PersonKeys {
+	static final int KEY_SIZE = 16;
+	private static final int SEQUENCE_BITS = 12;
+	
+	private static final SecureRandom random = new SecureRandom();
+	private static long lastTimestamp = 0;
+	private static int sequence = 0;
+	
+	private PersonKeys() {
+	}
+	
+	/**
+	 * @return un nouvel identifiant de personne, plus grand que tous ceux déjà produits
+	 */
+	static synchronized String newId() {
+		long now = System.currentTimeMillis();
+		
+		if (now > lastTimestamp) {
+			lastTimestamp = now;
+			// Départ aléatoire dans la moitié inférieure : laisse de la place au compteur
+			sequence = random.nextInt(1 << (SEQUENCE_BITS - 1));
+		}
+		else if (++sequence >= 1 << SEQUENCE_BITS) {
+			// Compteur épuisé (ou horloge reculée) : on emprunte la milliseconde suivante
+			lastTimestamp++;
+			sequence = 0;
+		}
+		
+		long mostSigBits = (lastTimestamp << 16) | (0x7L << SEQUENCE_BITS) | sequence;
+		long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		
+		return new UUID(mostSigBits, leastSigBits).toString();
+	}
+	
+	/**
+	 * @return true si l'identifiant est un UUID (et non un ancien identifiant interne de Neo4j)
+	 */
+	static boolean isStableId(String personId) {
+		try {
+			UUID.fromString(personId);
+			return true;
+		}
+		catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+	
+	static DatabaseEntry toKey(String personId) {
+		UUID uuid = UUID.fromString(personId);
+		ByteBuffer buffer = ByteBuffer.allocate(KEY_SIZE);
+		buffer.putLong(uuid.getMostSignificantBits());
+		buffer.putLong(uuid.getLeastSignificantBits());
+		
+		return new DatabaseEntry(buffer.array());
+	}
+}
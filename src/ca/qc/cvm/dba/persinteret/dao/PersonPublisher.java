@@ -0,0 +1,161 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.Iterator;
+
+import org.neo4j.driver.Session;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import ca.qc.cvm.dba.persinteret.entity.ImageMode;
+import ca.qc.cvm.dba.persinteret.entity.PeoplePage;
+import ca.qc.cvm.dba.persinteret.entity.Person;
+
+/**
+ * Liste des personnes, en ordre de nom, produite au fur et à mesure de la demande (Reactive Streams).
+ * 
+ * Contrairement à getPeopleList, rien n'est accumulé : chaque abonné a sa propre session Neo4j 
+ * et son propre fil d'exécution, qui lit les personnes par pages de PAGE_SIZE (même requête que 
+ * PersonDAO.getPeopleListAfter, servie par l'index sur le nom ou par NameIndex avec un filtre) 
+ * et une photo à la fois, seulement lorsque l'abonné en a fait la demande avec request(n). 
+ * Un export peut donc parcourir toutes les personnes avec une mémoire constante.
+ */
+public class PersonPublisher implements Publisher<Person> {
+	private static final int PAGE_SIZE = 100;
+	
+	private final String filterText;
+	private final ImageMode imageMode;
+	
+	/**
+	 * @param filterText préfixe du nom (insensible à la casse), peut être vide ou null
+	 * @param imageMode photo (ou vignette) à lire avec chaque personne
+	 */
+	public PersonPublisher(String filterText, ImageMode imageMode) {
+		this.filterText = filterText;
+		this.imageMode = imageMode;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super Person> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		
+		PersonSubscription subscription = new PersonSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		
+		Thread worker = new Thread(subscription, "PersonPublisher");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	private class PersonSubscription implements Subscription, Runnable {
+		private final Subscriber<? super Person> subscriber;
+		private long demand = 0;
+		private boolean cancelled = false;
+		private Throwable invalidRequest;
+		
+		public PersonSubscription(Subscriber<? super Person> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public synchronized void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("request(" + n + ") : la demande doit être positive");
+			}
+			else {
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			notifyAll();
+		}
+		
+		/**
+		 * Attend que l'abonné demande au moins une personne
+		 * 
+		 * @return false si l'abonnement a été annulé
+		 */
+		private synchronized boolean awaitDemand() throws InterruptedException {
+			while (demand == 0 && !cancelled && invalidRequest == null) {
+				wait();
+			}
+			
+			if (invalidRequest != null) {
+				cancelled = true;
+				subscriber.onError(invalidRequest);
+			}
+			
+			if (!cancelled) {
+				demand--;
+			}
+			
+			return !cancelled;
+		}
+
+		@Override
+		public void run() {
+			Session session = null;
+			
+			try {
+				// Rien n'est lu avant la première demande
+				if (!awaitDemand()) {
+					return;
+				}
+				
+				session = Neo4jConnection.openSession();
+				PeoplePage page = PersonDAO.getPeopleListAfter(session, null, null, filterText, ImageMode.NONE, PAGE_SIZE);
+				Iterator<Person> people = page.getPeople().iterator();
+				boolean first = true;
+				
+				while (people.hasNext()) {
+					if (!first && !awaitDemand()) {
+						return;
+					}
+					
+					first = false;
+					Person person = people.next();
+					
+					if (imageMode == ImageMode.FULL) {
+						person.setImageData(ImageDAO.get(person.getId()));
+					}
+					else if (imageMode == ImageMode.THUMBNAIL) {
+						person.setThumbnailData(ImageDAO.getThumbnail(person.getId()));
+					}
+					
+					subscriber.onNext(person);
+					
+					// Page suivante, lue seulement une fois la page courante consommée
+					if (!people.hasNext() && page.hasNextPage()) {
+						page = PersonDAO.getPeopleListAfter(session, page.getLastName(), page.getLastId(), filterText, ImageMode.NONE, PAGE_SIZE);
+						people = page.getPeople().iterator();
+					}
+				}
+				
+				if (!isCancelled()) {
+					subscriber.onComplete();
+				}
+			}
+			catch (Exception e) {
+				if (!isCancelled()) {
+					subscriber.onError(e);
+				}
+			}
+			finally {
+				if (session != null) {
+					session.close();
+				}
+			}
+		}
+		
+		private synchronized boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
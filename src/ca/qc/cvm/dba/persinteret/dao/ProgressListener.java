@@ -0,0 +1,16 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+/**
+ * Permet de suivre l'avancement d'un traitement en lot (importation, suppression, etc.)
+ */
+public interface ProgressListener {
+
+	/**
+	 * Méthode appelée à la fin de chaque lot traité
+	 *
+	 * @param done nombre d'éléments traités jusqu'à présent
+	 * @param total nombre total d'éléments, ou -1 s'il n'est pas connu d'avance
+	 * @param message description du lot (ex. débit obtenu)
+	 */
+	void progress(long done, long total, String message);
+}
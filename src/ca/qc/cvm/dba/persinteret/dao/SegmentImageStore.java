@@ -0,0 +1,704 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Photos sauvegardées dans des fichiers segments en ajout seulement (voir ImageDAO).
+ *
+ * - Chaque sauvegarde ou suppression ajoute un enregistrement à la fin du segment actif :
+ *   [type][longueur de la clé][longueur des données][CRC32][clé][données]
+ * - Un segment plein est scellé : la liste de ses enregistrements est écrite à la fin du fichier
+ *   (pied de segment), puis le fichier est projeté en mémoire (MappedByteBuffer) pour les lectures
+ * - L'index (identifiant -> segment, position, longueur) est gardé en mémoire. Au démarrage, il est
+ *   reconstruit à partir des pieds de segment, seul un segment non scellé (arrêt brutal) est relu au complet
+ * - Les photos remplacées ou supprimées laissent de l'espace mort : un fil en arrière-plan recopie
+ *   les enregistrements encore valides des segments à moitié vides, puis supprime ces segments
+ *
+ * Les photos ne sont pas dédupliquées selon leur contenu, contrairement à BerkeleyImageStore.
+ */
+class SegmentImageStore implements ImageStore {
+	private static final long SEGMENT_MAX_SIZE = 64L * 1024 * 1024;
+	private static final int HEADER_SIZE = 13;
+	private static final int TRAILER_SIZE = 16;
+	private static final int FOOTER_MAGIC = 0x50455253;
+	private static final byte TYPE_IMAGE = 1;
+	private static final byte TYPE_THUMBNAIL = 2;
+	private static final byte TYPE_DELETE = 3;
+	private static final double COMPACTION_THRESHOLD = 0.5;
+	private static final long COMPACTION_INTERVAL = 60;
+
+	private final File directory;
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	private final Map<String, Location> images = new HashMap<String, Location>();
+	private final Map<String, Location> thumbnails = new HashMap<String, Location>();
+	private final Map<String, Location> tombstones = new HashMap<String, Location>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final ScheduledExecutorService compactor;
+	private Segment active;
+
+	SegmentImageStore(File directory) throws IOException {
+		this.directory = directory;
+
+		if (!directory.isDirectory()) {
+			directory.mkdirs();
+		}
+
+		File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".dat"));
+
+		if (files == null) {
+			throw new IOException("Répertoire illisible : " + directory);
+		}
+
+		Arrays.sort(files);
+
+		for (int i = 0; i < files.length; i++) {
+			int id = Integer.parseInt(files[i].getName().substring(8, files[i].getName().length() - 4));
+			Segment segment = openSegment(id);
+			boolean sealed = loadFooter(segment);
+
+			if (!sealed) {
+				scan(segment);
+			}
+
+			if (i == files.length - 1) {
+				// Le dernier segment redevient le segment actif : son pied est retiré
+				segment.channel.truncate(segment.size);
+				segment.map = null;
+				active = segment;
+			}
+			else if (!sealed) {
+				// Ce qui suit le dernier enregistrement valide (écriture interrompue) cacherait le pied
+				segment.channel.truncate(segment.size);
+				seal(segment);
+			}
+			else {
+				segment.records = null;
+				segment.map = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+			}
+		}
+
+		if (active == null) {
+			active = newSegment(1);
+		}
+
+		compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "image-compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		compactor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public byte[] get(String personId) {
+		return read(images, personId);
+	}
+
+	@Override
+	public byte[] getThumbnail(String personId) {
+		return read(thumbnails, personId);
+	}
+
+	@Override
+	public Map<String, byte[]> getAll(Collection<String> personIds) {
+		return readAll(images, personIds);
+	}
+
+	@Override
+	public Map<String, byte[]> getThumbnails(Collection<String> personIds) {
+		return readAll(thumbnails, personIds);
+	}
+
+	@Override
+	public boolean saveAll(Map<String, byte[]> newImages) {
+		boolean success = false;
+		Map<String, byte[]> newThumbnails = new HashMap<String, byte[]>();
+
+		// Les vignettes sont créées avant de bloquer les lectures
+		for (Map.Entry<String, byte[]> image : newImages.entrySet()) {
+			if (image.getValue() != null) {
+				byte[] thumbnail = ImageDAO.createThumbnail(image.getValue());
+				newThumbnails.put(image.getKey(), thumbnail != null ? thumbnail : new byte[0]);
+			}
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			for (Map.Entry<String, byte[]> image : newImages.entrySet()) {
+				if (image.getValue() != null) {
+					append(TYPE_IMAGE, image.getKey(), image.getValue());
+					append(TYPE_THUMBNAIL, image.getKey(), newThumbnails.get(image.getKey()));
+				}
+			}
+
+			active.channel.force(false);
+			success = true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	@Override
+	public boolean delete(String personId) {
+		boolean success = false;
+		lock.writeLock().lock();
+
+		try {
+			if (images.containsKey(personId) || thumbnails.containsKey(personId)) {
+				append(TYPE_DELETE, personId, new byte[0]);
+				active.channel.force(false);
+			}
+
+			success = true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	@Override
+	public boolean deleteAll() {
+		boolean success = false;
+		lock.writeLock().lock();
+
+		try {
+			// Un fichier encore projeté peut refuser d'être supprimé (il le sera à la sortie) :
+			// le nouveau segment actif prend donc un numéro qui n'a jamais servi
+			int nextId = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+
+			for (Segment segment : segments.values()) {
+				delete(segment);
+			}
+
+			segments.clear();
+			images.clear();
+			thumbnails.clear();
+			tombstones.clear();
+			active = newSegment(nextId);
+			success = true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	@Override
+	public boolean rekey(Map<String, String> newIds) {
+		boolean success = false;
+		lock.writeLock().lock();
+
+		try {
+			List<String> oldIds = new ArrayList<String>(images.keySet());
+			oldIds.addAll(thumbnails.keySet());
+
+			for (String oldId : oldIds) {
+				if (!PersonKeys.isStableId(oldId) && (images.containsKey(oldId) || thumbnails.containsKey(oldId))) {
+					String newId = newIds.get(oldId);
+
+					if (newId != null) {
+						if (images.containsKey(oldId)) {
+							append(TYPE_IMAGE, newId, toBytes(slice(images.get(oldId))));
+						}
+						if (thumbnails.containsKey(oldId)) {
+							append(TYPE_THUMBNAIL, newId, toBytes(slice(thumbnails.get(oldId))));
+						}
+					}
+
+					append(TYPE_DELETE, oldId, new byte[0]);
+				}
+			}
+
+			active.channel.force(false);
+			success = true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		return success;
+	}
+
+	/**
+	 * Aucune version précédente de ce format
+	 */
+	@Override
+	public long upgrade(ProgressListener listener) {
+		return 0;
+	}
+
+	@Override
+	public long count() {
+		lock.readLock().lock();
+
+		try {
+			return images.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Recopie les enregistrements valides des segments scellés dont moins de la moitié
+	 * de l'espace est encore utilisé, puis supprime ces segments.
+	 * Appelée périodiquement en arrière-plan.
+	 */
+	public void compact() {
+		List<Segment> candidates = new ArrayList<Segment>();
+		lock.readLock().lock();
+
+		try {
+			for (Segment segment : segments.values()) {
+				if (segment != active && segment.liveBytes < segment.size * COMPACTION_THRESHOLD) {
+					candidates.add(segment);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		// Un segment à la fois, pour ne pas bloquer les lectures trop longtemps
+		for (Segment segment : candidates) {
+			lock.writeLock().lock();
+
+			try {
+				if (segments.get(segment.id) == segment) {
+					compact(segment);
+				}
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		compactor.shutdownNow();
+		lock.writeLock().lock();
+
+		try {
+			// Scellé afin que le prochain démarrage n'ait pas à relire le segment actif
+			seal(active);
+
+			for (Segment segment : segments.values()) {
+				segment.channel.close();
+			}
+
+			segments.clear();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private byte[] read(Map<String, Location> index, String personId) {
+		byte[] data = null;
+		lock.readLock().lock();
+
+		try {
+			Location location = index.get(personId);
+
+			if (location != null && location.length > 0) {
+				data = toBytes(slice(location));
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		return data;
+	}
+
+	private Map<String, byte[]> readAll(Map<String, Location> index, Collection<String> personIds) {
+		Map<String, byte[]> result = new HashMap<String, byte[]>();
+		lock.readLock().lock();
+
+		try {
+			for (String personId : personIds) {
+				Location location = index.get(personId);
+
+				if (location != null && location.length > 0) {
+					result.put(personId, toBytes(slice(location)));
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	private ByteBuffer slice(Location location) throws IOException {
+		Segment segment = segments.get(location.segment);
+		ByteBuffer buffer;
+
+		if (segment.map != null) {
+			buffer = segment.map.duplicate();
+			buffer.position((int)location.offset);
+			buffer.limit((int)(location.offset + location.length));
+			buffer = buffer.slice();
+		}
+		else {
+			// Segment actif : il grandit encore, il est lu directement
+			buffer = ByteBuffer.allocate(location.length);
+
+			while (buffer.hasRemaining()) {
+				if (segment.channel.read(buffer, location.offset + buffer.position()) < 0) {
+					throw new IOException("Fin de segment inattendue : " + segment.file);
+				}
+			}
+
+			buffer.flip();
+		}
+
+		return buffer;
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+
+		return data;
+	}
+
+	private void append(byte type, String personId, byte[] data) throws IOException {
+		byte[] key = personId.getBytes(StandardCharsets.UTF_8);
+		int recordSize = HEADER_SIZE + key.length + data.length;
+
+		if (active.size > 0 && active.size + recordSize > SEGMENT_MAX_SIZE) {
+			seal(active);
+			active = newSegment(active.id + 1);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(data);
+
+		ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+		buffer.put(type);
+		buffer.putInt(key.length);
+		buffer.putInt(data.length);
+		buffer.putInt((int)crc.getValue());
+		buffer.put(key);
+		buffer.put(data);
+		buffer.flip();
+
+		long position = active.size;
+		write(active.channel, buffer, position);
+		active.size += recordSize;
+
+		apply(active, type, personId, position + HEADER_SIZE + key.length, data.length, recordSize);
+	}
+
+	/**
+	 * Met l'index à jour pour un enregistrement (écrit, lu d'un pied de segment ou relu au démarrage)
+	 */
+	private void apply(Segment segment, byte type, String personId, long offset, int length, int recordSize) {
+		Location location = new Location(segment.id, offset, length, recordSize);
+		segment.liveBytes += recordSize;
+
+		if (type == TYPE_DELETE) {
+			release(images.remove(personId));
+			release(thumbnails.remove(personId));
+			release(tombstones.put(personId, location));
+		}
+		else {
+			release((type == TYPE_IMAGE ? images : thumbnails).put(personId, location));
+			release(tombstones.remove(personId));
+		}
+
+		if (segment.records != null) {
+			segment.records.add(new Record(type, personId, location));
+		}
+	}
+
+	private void release(Location location) {
+		if (location != null) {
+			Segment segment = segments.get(location.segment);
+
+			if (segment != null) {
+				segment.liveBytes -= location.recordSize;
+			}
+		}
+	}
+
+	private void compact(Segment segment) throws IOException {
+		copy(images, TYPE_IMAGE, segment);
+		copy(thumbnails, TYPE_THUMBNAIL, segment);
+
+		// Une suppression doit survivre tant qu'un segment plus ancien peut contenir la photo supprimée
+		boolean oldest = segments.firstKey() == segment.id;
+
+		for (Map.Entry<String, Location> tombstone : new ArrayList<Map.Entry<String, Location>>(tombstones.entrySet())) {
+			if (tombstone.getValue().segment == segment.id) {
+				if (oldest) {
+					tombstones.remove(tombstone.getKey());
+				}
+				else {
+					append(TYPE_DELETE, tombstone.getKey(), new byte[0]);
+				}
+			}
+		}
+
+		active.channel.force(false);
+		segments.remove(segment.id);
+		delete(segment);
+	}
+
+	private static void delete(Segment segment) throws IOException {
+		segment.channel.close();
+		segment.map = null;
+
+		if (!segment.file.delete()) {
+			segment.file.deleteOnExit();
+		}
+	}
+
+	private void copy(Map<String, Location> index, byte type, Segment segment) throws IOException {
+		for (Map.Entry<String, Location> entry : new ArrayList<Map.Entry<String, Location>>(index.entrySet())) {
+			if (entry.getValue().segment == segment.id) {
+				append(type, entry.getKey(), toBytes(slice(entry.getValue())));
+			}
+		}
+	}
+
+	private Segment openSegment(int id) throws IOException {
+		File file = new File(directory, String.format("segment-%06d.dat", id));
+		Segment segment = new Segment(id, file, new RandomAccessFile(file, "rw").getChannel());
+		segments.put(id, segment);
+
+		return segment;
+	}
+
+	/**
+	 * Nouveau segment actif, vide même si un fichier du même nom n'a pas pu être supprimé
+	 */
+	private Segment newSegment(int id) throws IOException {
+		Segment segment = openSegment(id);
+		segment.channel.truncate(0);
+
+		return segment;
+	}
+
+	/**
+	 * Écrit le pied du segment (liste de ses enregistrements), puis le projette en mémoire
+	 */
+	private void seal(Segment segment) throws IOException {
+		int footerSize = TRAILER_SIZE;
+
+		for (Record record : segment.records) {
+			footerSize += 1 + 4 + record.key.length + 8 + 4;
+		}
+
+		ByteBuffer footer = ByteBuffer.allocate(footerSize);
+
+		for (Record record : segment.records) {
+			footer.put(record.type);
+			footer.putInt(record.key.length);
+			footer.put(record.key);
+			footer.putLong(record.location.offset);
+			footer.putInt(record.location.length);
+		}
+
+		footer.putLong(segment.size);
+		footer.putInt(segment.records.size());
+		footer.putInt(FOOTER_MAGIC);
+		footer.flip();
+
+		write(segment.channel, footer, segment.size);
+		segment.channel.force(true);
+		segment.records = null;
+		segment.map = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+	}
+
+	/**
+	 * Reconstruit l'index à partir du pied d'un segment scellé
+	 *
+	 * @return false si le segment n'a pas de pied valide
+	 */
+	private boolean loadFooter(Segment segment) throws IOException {
+		long fileSize = segment.channel.size();
+
+		if (fileSize < TRAILER_SIZE) {
+			return false;
+		}
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		read(segment.channel, trailer, fileSize - TRAILER_SIZE);
+		long footerStart = trailer.getLong();
+		int count = trailer.getInt();
+
+		if (trailer.getInt() != FOOTER_MAGIC || footerStart < 0 || footerStart > fileSize - TRAILER_SIZE) {
+			return false;
+		}
+
+		ByteBuffer footer = ByteBuffer.allocate((int)(fileSize - TRAILER_SIZE - footerStart));
+		read(segment.channel, footer, footerStart);
+		segment.size = footerStart;
+
+		for (int i = 0; i < count; i++) {
+			byte type = footer.get();
+			byte[] key = new byte[footer.getInt()];
+			footer.get(key);
+			long offset = footer.getLong();
+			int length = footer.getInt();
+
+			apply(segment, type, new String(key, StandardCharsets.UTF_8), offset, length, HEADER_SIZE + key.length + length);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Relit un segment non scellé enregistrement par enregistrement. Un enregistrement incomplet
+	 * ou corrompu (écriture interrompue) marque la fin du segment.
+	 */
+	private void scan(Segment segment) throws IOException {
+		long fileSize = segment.channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+		while (position + HEADER_SIZE <= fileSize) {
+			header.clear();
+			read(segment.channel, header, position);
+			byte type = header.get();
+			int keyLength = header.getInt();
+			int dataLength = header.getInt();
+			int checksum = header.getInt();
+
+			if (type < TYPE_IMAGE || type > TYPE_DELETE || keyLength < 0 || dataLength < 0
+					|| position + HEADER_SIZE + keyLength + dataLength > fileSize) {
+				break;
+			}
+
+			ByteBuffer body = ByteBuffer.allocate(keyLength + dataLength);
+			read(segment.channel, body, position + HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(body.array());
+
+			if ((int)crc.getValue() != checksum) {
+				break;
+			}
+
+			String personId = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+			apply(segment, type, personId, position + HEADER_SIZE + keyLength, dataLength, HEADER_SIZE + keyLength + dataLength);
+			position += HEADER_SIZE + keyLength + dataLength;
+		}
+
+		segment.size = position;
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Fin de fichier inattendue");
+			}
+		}
+
+		buffer.flip();
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private static class Segment {
+		final int id;
+		final File file;
+		final FileChannel channel;
+		// Fin du dernier enregistrement (sans le pied)
+		long size;
+		long liveBytes;
+		// Projection en mémoire, seulement une fois le segment scellé
+		MappedByteBuffer map;
+		// Enregistrements du segment actif, pour écrire son pied
+		List<Record> records = new ArrayList<Record>();
+
+		Segment(int id, File file, FileChannel channel) {
+			this.id = id;
+			this.file = file;
+			this.channel = channel;
+		}
+	}
+
+	private static class Location {
+		final int segment;
+		final long offset;
+		final int length;
+		final int recordSize;
+
+		Location(int segment, long offset, int length, int recordSize) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.recordSize = recordSize;
+		}
+	}
+
+	private static class Record {
+		final byte type;
+		final byte[] key;
+		final Location location;
+
+		Record(byte type, String personId, Location location) {
+			this.type = type;
+			this.key = personId.getBytes(StandardCharsets.UTF_8);
+			this.location = location;
+		}
+	}
+}
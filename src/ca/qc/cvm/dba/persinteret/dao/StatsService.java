@@ -0,0 +1,216 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.StatementResult;
+
+import ca.qc.cvm.dba.persinteret.entity.Person;
+import ca.qc.cvm.dba.persinteret.entity.StatsSnapshot;
+
+/**
+ * Statistiques du tableau de bord, maintenues en mémoire.
+ * 
+ * Les données sont lues une seule fois (voir load, appelée au démarrage), puis PersonDAO informe ce service
+ * de chaque sauvegarde/suppression. Les compteurs par statut, la somme des années de naissance
+ * et l'ordre des dates de naissance sont ainsi toujours à jour, et obtenir les statistiques
+ * ne dépend plus du nombre de personnes.
+ */
+public class StatsService {
+	private static Map<String, Entry> people;
+	private static Map<String, Long> statusCounts;
+	private static TreeSet<Entry> byDateOfBirth;
+	private static long birthYearSum;
+	private static long birthYearCount;
+	private static StatsSnapshot snapshot;
+	
+	/**
+	 * @return les statistiques actuelles, null si les données n'ont pas pu être lues
+	 */
+	public static synchronized StatsSnapshot getSnapshot() {
+		if (!load()) {
+			return null;
+		}
+		
+		if (snapshot == null) {
+			int averageAge = 0;
+			
+			if (birthYearCount > 0) {
+				averageAge = (int) Math.round(LocalDate.now().getYear() - (double) birthYearSum / birthYearCount);
+			}
+			
+			snapshot = new StatsSnapshot(people.size(), ImageDAO.count(), statusCounts, averageAge, 
+					byDateOfBirth.isEmpty() ? "--" : byDateOfBirth.first().name);
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * @return true si les données ont déjà été lues (getSnapshot ne fera alors aucune requête)
+	 */
+	public static synchronized boolean isLoaded() {
+		return people != null;
+	}
+	
+	/**
+	 * Appelé après la sauvegarde (insertion ou mise à jour) d'une personne
+	 * 
+	 * @param id identifiant de la personne sauvegardée
+	 * @param person
+	 */
+	public static synchronized void onSave(String id, Person person) {
+		if (people != null) {
+			remove(id);
+			add(new Entry(id, person.getName(), person.getStatus(), person.getDateOfBirth()));
+			snapshot = null;
+		}
+	}
+	
+	/**
+	 * Appelé après la suppression d'une personne
+	 * 
+	 * @param id identifiant de la personne supprimée
+	 */
+	public static synchronized void onDelete(String id) {
+		if (people != null) {
+			remove(id);
+			snapshot = null;
+		}
+	}
+	
+	/**
+	 * Appelé lorsque des données sont modifiées sans passer par onSave/onDelete (ex. suppression totale).
+	 * Les statistiques seront relues au prochain appel.
+	 */
+	public static synchronized void reset() {
+		people = null;
+		snapshot = null;
+	}
+	
+	/**
+	 * Lit les données si ce n'est pas déjà fait. Elles ne sont conservées que si la lecture a réussi :
+	 * sinon, elles seront relues au prochain appel.
+	 * 
+	 * @return true si les statistiques sont prêtes
+	 */
+	public static synchronized boolean load() {
+		if (people == null) {
+			List<Entry> loaded = new ArrayList<Entry>();
+			
+			try (Session session = Neo4jConnection.openSession()) {
+				StatementResult result = session.run("MATCH (p:Person) RETURN p.uid AS id, p.name AS name, "
+						+ "p.status AS status, p.dateOfBirth AS dob");
+				
+				while (result.hasNext()) {
+					Record record = result.next();
+					loaded.add(new Entry(record.get("id").asString(), 
+							record.get("name").isNull() ? null : record.get("name").asString(),
+							record.get("status").isNull() ? null : record.get("status").asString(),
+							record.get("dob").isNull() ? null : record.get("dob").asString()));
+				}
+				
+				people = new HashMap<String, Entry>();
+				statusCounts = new HashMap<String, Long>();
+				byDateOfBirth = new TreeSet<Entry>(YOUNGEST_FIRST);
+				birthYearSum = 0;
+				birthYearCount = 0;
+				snapshot = null;
+				
+				for (Entry entry : loaded) {
+					add(entry);
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return people != null;
+	}
+	
+	private static void add(Entry entry) {
+		people.put(entry.id, entry);
+		
+		if (entry.status != null) {
+			Long count = statusCounts.get(entry.status);
+			statusCounts.put(entry.status, count == null ? 1 : count + 1);
+		}
+		
+		if (entry.birthYear != null) {
+			birthYearSum += entry.birthYear;
+			birthYearCount++;
+			byDateOfBirth.add(entry);
+		}
+	}
+	
+	private static void remove(String id) {
+		Entry entry = people.remove(id);
+		
+		if (entry != null) {
+			if (entry.status != null) {
+				Long count = statusCounts.get(entry.status);
+				
+				if (count != null && count > 1) {
+					statusCounts.put(entry.status, count - 1);
+				}
+				else {
+					statusCounts.remove(entry.status);
+				}
+			}
+			
+			if (entry.birthYear != null) {
+				birthYearSum -= entry.birthYear;
+				birthYearCount--;
+				byDateOfBirth.remove(entry);
+			}
+		}
+	}
+	
+	private static final Comparator<Entry> YOUNGEST_FIRST = new Comparator<Entry>() {
+
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int diff = e2.dateOfBirth.compareTo(e1.dateOfBirth);
+			
+			if (diff == 0) {
+				diff = e1.id.compareTo(e2.id);
+			}
+			
+			return diff;
+		}
+	};
+	
+	private static class Entry {
+		private final String id;
+		private final String name;
+		private final String status;
+		private final String dateOfBirth;
+		private final Integer birthYear;
+		
+		public Entry(String id, String name, String status, String dateOfBirth) {
+			this.id = id;
+			this.name = name;
+			this.status = status;
+			this.dateOfBirth = dateOfBirth;
+			
+			Integer year = null;
+			
+			try {
+				year = LocalDate.parse(dateOfBirth).getYear();
+			}
+			catch (Exception e) {
+				// Date absente ou invalide : la personne ne compte pas dans l'âge moyen
+			}
+			
+			this.birthYear = year;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package ca.qc.cvm.dba.persinteret.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.StatementResult;
+
+/**
+ * Classement des prochaines cibles, maintenu en mémoire.
+ * 
+ * Le score d'une personne libre est le nombre de personnes distinctes disparues ou mortes
+ * qu'elle connait (ou qui la connaissent). Le classement est calculé une seule fois, puis
+ * PersonDAO demande de recalculer seulement les personnes touchées par une modification :
+ * la personne elle-même et ses voisins, avant et après la modification.
+ */
+public class TargetRanking {
+	private static Map<String, Target> targets;
+	private static TreeSet<Target> ranking;
+	
+	/**
+	 * @param k nombre de cibles voulues
+	 * @return le nom des k meilleures cibles, de la plus importante à la moins importante
+	 */
+	public static synchronized List<String> getTopTargets(int k) {
+		load();
+		
+		List<String> names = new ArrayList<String>();
+		Iterator<Target> iterator = ranking.iterator();
+		
+		while (names.size() < k && iterator.hasNext()) {
+			names.add(iterator.next().name);
+		}
+		
+		return names;
+	}
+	
+	/**
+	 * Recalcule le score des personnes données et de leurs voisins actuels. Les personnes
+	 * qui n'existent plus sont retirées du classement.
+	 * 
+	 * @param ids identifiants des personnes touchées par une modification 
+	 * (incluant les voisins qu'elles avaient avant la modification)
+	 */
+	public static synchronized void refresh(Collection<String> ids) {
+		if (targets != null && !ids.isEmpty()) {
+			try (Session session = Neo4jConnection.openSession()) {
+				Set<String> missing = new HashSet<String>(ids);
+				Map<String, Object> params = new HashMap<String, Object>();
+				params.put("ids", new ArrayList<String>(ids));
+				
+				StatementResult result = session.run("MATCH (a:Person) WHERE a.uid IN $ids "
+						+ "OPTIONAL MATCH (a)-[:CONNEXION]-(n:Person) "
+						+ "WITH collect(a) + collect(n) AS nodes "
+						+ "UNWIND nodes AS p "
+						+ "WITH DISTINCT p "
+						+ "OPTIONAL MATCH (p)-[:CONNEXION]-(m:Person) WHERE m.status IN ['Disparu', 'Mort'] "
+						+ "RETURN p.uid AS id, p.name AS name, p.status AS status, count(DISTINCT m) AS score", params);
+				
+				while (result.hasNext()) {
+					Record record = result.next();
+					String id = record.get("id").asString();
+					missing.remove(id);
+					
+					if ("Libre".equals(record.get("status").isNull() ? null : record.get("status").asString())) {
+						put(new Target(id, record.get("name").asString(), record.get("score").asInt()));
+					}
+					else {
+						remove(id);
+					}
+				}
+				
+				for (String id : missing) {
+					remove(id);
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+				reset();
+			}
+		}
+	}
+	
+	/**
+	 * Le classement sera recalculé au complet au prochain appel (ex. après une importation en lot)
+	 */
+	public static synchronized void reset() {
+		targets = null;
+		ranking = null;
+	}
+	
+	private static void load() {
+		if (targets == null) {
+			targets = new HashMap<String, Target>();
+			ranking = new TreeSet<Target>(BEST_FIRST);
+			
+			try (Session session = Neo4jConnection.openSession()) {
+				StatementResult result = session.run("MATCH (p:Person {status: 'Libre'})-[:CONNEXION]-(m:Person) "
+						+ "WHERE m.status IN ['Disparu', 'Mort'] "
+						+ "RETURN p.uid AS id, p.name AS name, count(DISTINCT m) AS score");
+				
+				while (result.hasNext()) {
+					Record record = result.next();
+					put(new Target(record.get("id").asString(), record.get("name").asString(), record.get("score").asInt()));
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private static void put(Target target) {
+		remove(target.id);
+		
+		if (target.score > 0) {
+			targets.put(target.id, target);
+			ranking.add(target);
+		}
+	}
+	
+	private static void remove(String id) {
+		Target target = targets.remove(id);
+		
+		if (target != null) {
+			ranking.remove(target);
+		}
+	}
+	
+	private static final Comparator<Target> BEST_FIRST = new Comparator<Target>() {
+
+		@Override
+		public int compare(Target t1, Target t2) {
+			int diff = Integer.compare(t2.score, t1.score);
+			
+			if (diff == 0) {
+				diff = t1.name.compareTo(t2.name);
+			}
+			
+			if (diff == 0) {
+				diff = t1.id.compareTo(t2.id);
+			}
+			
+			return diff;
+		}
+	};
+	
+	private static class Target {
+		private final String id;
+		private final String name;
+		private final int score;
+		
+		public Target(String id, String name, int score) {
+			this.id = id;
+			this.name = name;
+			this.score = score;
+		}
+	}
+}
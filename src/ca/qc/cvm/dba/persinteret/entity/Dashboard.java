@@ -0,0 +1,22 @@
+package ca.qc.cvm.dba.persinteret.entity;
+
+/**
+ * Tout ce qu'affiche la page des statistiques, obtenu d'un seul appel (voir PersonDAO.getDashboard)
+ */
+public class Dashboard {
+	private final StatsSnapshot stats;
+	private final String nextTargetName;
+
+	public Dashboard(StatsSnapshot stats, String nextTargetName) {
+		this.stats = stats;
+		this.nextTargetName = nextTargetName;
+	}
+
+	public StatsSnapshot getStats() {
+		return stats;
+	}
+
+	public String getNextTargetName() {
+		return nextTargetName;
+	}
+}
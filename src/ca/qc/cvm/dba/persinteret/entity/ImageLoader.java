@@ -0,0 +1,13 @@
+package ca.qc.cvm.dba.persinteret.entity;
+
+/**
+ * Permet à une personne d'aller chercher sa photo seulement lorsqu'elle est demandée
+ */
+public interface ImageLoader {
+
+	/**
+	 * @param personId identifiant de la personne
+	 * @return la photo, ou null si la personne n'en a pas
+	 */
+	byte[] load(String personId);
+}
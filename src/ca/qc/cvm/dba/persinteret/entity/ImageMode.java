@@ -0,0 +1,20 @@
+package ca.qc.cvm.dba.persinteret.entity;
+
+/**
+ * Photos à fournir avec les personnes d'une liste
+ * 
+ * - NONE : aucune photo
+ * - THUMBNAIL : la vignette (quelques Ko), la photo complète n'est lue que si elle est demandée
+ * - FULL : la photo complète
+ */
+public enum ImageMode {
+	NONE, THUMBNAIL, FULL;
+	
+	/**
+	 * @param withImage ancien paramètre booléen des listes
+	 * @return FULL si withImage, NONE sinon
+	 */
+	public static ImageMode of(boolean withImage) {
+		return withImage ? FULL : NONE;
+	}
+}
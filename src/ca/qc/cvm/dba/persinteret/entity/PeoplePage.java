@@ -0,0 +1,41 @@
+package ca.qc.cvm.dba.persinteret.entity;
+
+import java.util.List;
+
+/**
+ * Une page de la liste des personnes (voir PersonDAO.getPeopleListAfter).
+ * 
+ * Le nom et l'identifiant de la dernière personne de la page servent de point de départ
+ * pour demander la page suivante.
+ */
+public class PeoplePage {
+	private final List<Person> people;
+	private final boolean hasNextPage;
+	
+	public PeoplePage(List<Person> people, boolean hasNextPage) {
+		this.people = people;
+		this.hasNextPage = hasNextPage;
+	}
+	
+	public List<Person> getPeople() {
+		return people;
+	}
+	
+	public boolean hasNextPage() {
+		return hasNextPage;
+	}
+	
+	/**
+	 * @return nom de la dernière personne de la page, à passer pour obtenir la page suivante
+	 */
+	public String getLastName() {
+		return people.isEmpty() ? null : people.get(people.size() - 1).getName();
+	}
+	
+	/**
+	 * @return identifiant de la dernière personne de la page, à passer pour obtenir la page suivante
+	 */
+	public String getLastId() {
+		return people.isEmpty() ? null : people.get(people.size() - 1).getId();
+	}
+}
@@ -10,6 +10,9 @@ public class Person {
 	private String status;
 	private List<String> connexions;
 	private byte[] imageData;
+	private ImageLoader imageLoader;
+	private byte[] thumbnailData;
+	private ImageLoader thumbnailLoader;
 	
 	public Person() {
 		
@@ -58,9 +61,65 @@ public class Person {
 		this.codeName = codeName;
 	}
 
-	public byte[] getImageData() {
+	/**
+	 * Retourne la photo. Si la personne a été chargée sans sa photo (voir setImageLoader),
+	 * celle-ci est lue au premier appel, puis conservée.
+	 */
+	public synchronized byte[] getImageData() {
+		if (imageLoader != null) {
+			imageData = imageLoader.load(id);
+			imageLoader = null;
+		}
+		
 		return imageData;
 	}
+	
+	/**
+	 * @return false si la photo n'a pas encore été lue depuis la base de données
+	 */
+	public synchronized boolean isImageLoaded() {
+		return imageLoader == null;
+	}
+	
+	/**
+	 * Indique comment aller chercher la photo au moment où elle sera demandée
+	 * 
+	 * @param imageLoader
+	 */
+	public synchronized void setImageLoader(ImageLoader imageLoader) {
+		this.imageData = null;
+		this.imageLoader = imageLoader;
+	}
+
+	/**
+	 * Retourne la vignette de la photo (voir ImageMode.THUMBNAIL), lue au premier appel
+	 * si la personne a été chargée avec setThumbnailLoader
+	 */
+	public synchronized byte[] getThumbnailData() {
+		if (thumbnailLoader != null) {
+			thumbnailData = thumbnailLoader.load(id);
+			thumbnailLoader = null;
+		}
+		
+		return thumbnailData;
+	}
+	
+	/**
+	 * @return false si la vignette n'a pas encore été lue depuis la base de données
+	 */
+	public synchronized boolean isThumbnailLoaded() {
+		return thumbnailLoader == null;
+	}
+	
+	public synchronized void setThumbnailLoader(ImageLoader thumbnailLoader) {
+		this.thumbnailData = null;
+		this.thumbnailLoader = thumbnailLoader;
+	}
+	
+	public synchronized void setThumbnailData(byte[] thumbnailData) {
+		this.thumbnailData = thumbnailData;
+		this.thumbnailLoader = null;
+	}
 
 	public String getName() {
 		return name;
@@ -86,8 +145,9 @@ public class Person {
 		this.status = status;
 	}
 
-	public void setImageData(byte[] imageData) {
+	public synchronized void setImageData(byte[] imageData) {
 		this.imageData = imageData;
+		this.imageLoader = null;
 	}
 
 	public String toString() {
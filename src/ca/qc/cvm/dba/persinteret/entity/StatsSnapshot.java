@@ -0,0 +1,61 @@
+package ca.qc.cvm.dba.persinteret.entity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Statistiques du tableau de bord, à un moment donné. Cet objet ne change pas :
+ * une nouvelle instance est produite à chaque modification des données.
+ */
+public class StatsSnapshot {
+	private final long peopleCount;
+	private final long photoCount;
+	private final Map<String, Long> statusCounts;
+	private final int averageAge;
+	private final String youngestPerson;
+	
+	public StatsSnapshot(long peopleCount, long photoCount, Map<String, Long> statusCounts, int averageAge, String youngestPerson) {
+		this.peopleCount = peopleCount;
+		this.photoCount = photoCount;
+		this.statusCounts = Collections.unmodifiableMap(new HashMap<String, Long>(statusCounts));
+		this.averageAge = averageAge;
+		this.youngestPerson = youngestPerson;
+	}
+
+	public long getPeopleCount() {
+		return peopleCount;
+	}
+
+	public long getPhotoCount() {
+		return photoCount;
+	}
+
+	/**
+	 * @return nombre de personnes pour chaque statut (Libre, Prison, Disparu, Mort)
+	 */
+	public Map<String, Long> getStatusCounts() {
+		return statusCounts;
+	}
+	
+	public long getStatusCount(String status) {
+		Long count = statusCounts.get(status);
+		
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return ratio de personnes en liberté, entre 0 et 100
+	 */
+	public int getFreeRatio() {
+		return peopleCount > 0 ? (int) Math.round(100.0 * getStatusCount("Libre") / peopleCount) : 0;
+	}
+
+	public int getAverageAge() {
+		return averageAge;
+	}
+
+	public String getYoungestPerson() {
+		return youngestPerson;
+	}
+}
@@ -7,7 +7,7 @@ package ca.qc.cvm.dba.persinteret.event;
  *
  */
 public abstract class CommonEvent {
-	public enum Type {General, UI, GoTo, Back, Save, Delete, DeleteAll, Correction};
+	public enum Type {General, UI, GoTo, Back, Save, Delete, DeleteAll, Correction, Startup};
 	
 	private Type type;
 	
@@ -18,4 +18,13 @@ public abstract class CommonEvent {
 	public Type getType() {
 		return type;
 	}
+	
+	/**
+	 * Deux vnements en attente avec la mme cl sont interchangeables : seul le plus rcent est trait.
+	 * 
+	 * @return la cl, null (par dfaut) si l'vnement ne doit jamais tre regroup
+	 */
+	public Object getCoalesceKey() {
+		return null;
+	}
 }
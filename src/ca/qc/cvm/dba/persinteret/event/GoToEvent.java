@@ -1,5 +1,7 @@
 package ca.qc.cvm.dba.persinteret.event;
 
+import java.util.Arrays;
+
 import ca.qc.cvm.dba.persinteret.entity.Person;
 import ca.qc.cvm.dba.persinteret.view.FrameMain.Views;
 
@@ -30,4 +32,12 @@ public class GoToEvent extends CommonEvent {
 	public Views getDestination() {
 		return destination;
 	}
+	
+	/**
+	 * La personne est compare par son identifiant (Person ne dfinit pas equals), null pour une nouvelle personne
+	 */
+	@Override
+	public Object getCoalesceKey() {
+		return Arrays.asList(getType(), destination, currentPerson != null ? currentPerson.getId() : null);
+	}
 }
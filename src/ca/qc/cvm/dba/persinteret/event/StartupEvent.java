@@ -0,0 +1,12 @@
+package ca.qc.cvm.dba.persinteret.event;
+
+/**
+ * vnement ajout par l'application  son dmarrage : mise  niveau des donnes
+ * d'une version prcdente, avant toute lecture
+ */
+public class StartupEvent extends CommonEvent {
+	
+	public StartupEvent() {
+		super(CommonEvent.Type.Startup);
+	}
+}
@@ -4,7 +4,7 @@ package ca.qc.cvm.dba.persinteret.event;
  * vnement qui a rapport  l'interface graphique
  */
 public class UIEvent extends CommonEvent {
-	public enum UIType {ShowMessage, GoTo, Refresh, Back}
+	public enum UIType {ShowMessage, GoTo, Refresh, Back, Progress, Saved}
 	
 	private UIType uiType;
 	private Object data;
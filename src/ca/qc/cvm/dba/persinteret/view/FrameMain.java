@@ -12,9 +12,11 @@ import java.util.List;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import ca.qc.cvm.dba.persinteret.app.Facade;
+import ca.qc.cvm.dba.persinteret.entity.Person;
 import ca.qc.cvm.dba.persinteret.event.GoToEvent;
 import ca.qc.cvm.dba.persinteret.event.UIEvent;
 
@@ -22,6 +24,7 @@ public class FrameMain extends JFrame implements PropertyChangeListener {
 	private static final long serialVersionUID = 1L;
 	private static final int WIDTH = 900;
 	private static final int HEIGHT = 600;
+	private static final String TITLE = "Personnes d'intérêt";
 	
 	public enum Views {MainMenu, List, Stats, PersonSave}
 	
@@ -42,7 +45,7 @@ public class FrameMain extends JFrame implements PropertyChangeListener {
         this.setResizable(false);
 		this.setSize(WIDTH, HEIGHT);
 		
-		this.setTitle("Personnes d'intérêt");
+		this.setTitle(TITLE);
         setDefaultCloseOperation(javax.swing.WindowConstants.DO_NOTHING_ON_CLOSE);
         this.addWindowListener(new WindowListener() {
 
@@ -119,6 +122,12 @@ public class FrameMain extends JFrame implements PropertyChangeListener {
 	 */
 	@Override
 	public void propertyChange(PropertyChangeEvent evt) {
+		// Les événements arrivent des fils de traitement de l'application : la vue n'est modifiée que dans celui de Swing
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> propertyChange(evt));
+			return;
+		}
+		
 		UIEvent.UIType event = UIEvent.UIType.valueOf(evt.getPropertyName());
 		
 		if (event == UIEvent.UIType.ShowMessage) {
@@ -135,5 +144,23 @@ public class FrameMain extends JFrame implements PropertyChangeListener {
 		else if (event == UIEvent.UIType.Refresh) {
 			panels.get(currentView).resetView();
 		}
+		else if (event == UIEvent.UIType.Saved) {
+			// Retour à la liste seulement si le formulaire sauvegardé est encore affiché.
+			// Sinon, la page courante est rafraîchie, sauf un autre formulaire (pour ne pas perdre sa saisie)
+			Person shown = Facade.getInstance().getCurrentPerson();
+			String shownId = shown != null && shown.getId() != null ? shown.getId() : "";
+			
+			if (currentView == Views.PersonSave) {
+				if (shownId.equals(evt.getNewValue())) {
+					this.setState(Views.List, true);
+				}
+			}
+			else {
+				panels.get(currentView).resetView();
+			}
+		}
+		else if (event == UIEvent.UIType.Progress) {
+			this.setTitle(evt.getNewValue() != null ? TITLE + " - " + evt.getNewValue() : TITLE);
+		}
 	}
 }
@@ -5,8 +5,10 @@ import java.awt.Dimension;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
 import ca.qc.cvm.dba.persinteret.app.Facade;
+import ca.qc.cvm.dba.persinteret.entity.StatsSnapshot;
 import ca.qc.cvm.dba.persinteret.view.util.BackgroundPanel;
 
 public class PanelData extends CommonPanel {
@@ -18,6 +20,8 @@ public class PanelData extends CommonPanel {
 	private JLabel youngestPerson;
 	private JLabel nextTarget;
 	private JLabel avgAge;
+	// Numéro de l'affichage en cours : le résultat d'un affichage précédent, arrivé en retard, est ignoré
+	private int loadId = 0;
 
 	public PanelData(int width, int height) throws Exception {
 		super(width, height, true, "assets/images/background-data-menu.jpg");
@@ -68,13 +72,38 @@ public class PanelData extends CommonPanel {
 	 */
 	@Override
 	public void resetUI() {
-		freeRatio.setText(Facade.getInstance().getFreeRatio() + "%");
-		photoCount.setText(Facade.getInstance().getPhotoCount() + "");
-		peopleCount.setText(Facade.getInstance().getPeopleCount() + "");
-		youngestPerson.setText(Facade.getInstance().getYoungestPerson());
-		nextTarget.setText(Facade.getInstance().getNextTargetName());
-		avgAge.setText(Facade.getInstance().getAverageAge() + "");
+		final int id = ++loadId;
 		
+		for (JLabel label : new JLabel[] {freeRatio, photoCount, peopleCount, youngestPerson, nextTarget, avgAge}) {
+			label.setText("...");
+		}
+		
+		// Toutes les statistiques en un seul appel, hors du fil de Swing
+		Facade.getInstance().getDashboardAsync().whenComplete((dashboard, error) -> {
+			SwingUtilities.invokeLater(() -> {
+				if (id != loadId) {
+					return;
+				}
+				
+				if (error != null || dashboard == null) {
+					if (error != null) {
+						error.printStackTrace();
+					}
+					
+					peopleCount.setText("Erreur");
+				}
+				else {
+					StatsSnapshot stats = dashboard.getStats();
+					
+					freeRatio.setText(stats.getFreeRatio() + "%");
+					photoCount.setText(stats.getPhotoCount() + "");
+					peopleCount.setText(stats.getPeopleCount() + "");
+					youngestPerson.setText(stats.getYoungestPerson());
+					nextTarget.setText(dashboard.getNextTargetName());
+					avgAge.setText(stats.getAverageAge() + "");
+				}
+			});
+		});
 	}
 
 }
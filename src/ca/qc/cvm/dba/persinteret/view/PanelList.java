@@ -5,7 +5,9 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
@@ -15,10 +17,16 @@ import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
 import ca.qc.cvm.dba.persinteret.app.Facade;
+import ca.qc.cvm.dba.persinteret.entity.ImageMode;
+import ca.qc.cvm.dba.persinteret.entity.PeoplePage;
 import ca.qc.cvm.dba.persinteret.entity.Person;
 import ca.qc.cvm.dba.persinteret.event.DeleteEvent;
 import ca.qc.cvm.dba.persinteret.event.GoToEvent;
@@ -26,13 +34,30 @@ import ca.qc.cvm.dba.persinteret.view.util.BackgroundPanel;
 
 public class PanelList extends CommonPanel {
 	private static final long serialVersionUID = 1L;
+	private static final int PAGE_SIZE = 50;
+	// Délai sans frappe avant de lancer la recherche, en millisecondes
+	private static final int SEARCH_DELAY = 150;
 
 	private JTextField searchField;
 	private JList<String> peopleList;
 	private JButton editButton;
 	private JButton deleteButton;
+	private JButton previousButton;
+	private JButton nextButton;
 	
 	private List<Person> people;
+	private PeoplePage currentPage;
+	// Point de départ (nom, id) de chaque page visitée, null pour la première page
+	private List<String[]> pageStarts = new ArrayList<String[]>();
+	// Numéro de la page demandée : une page arrivée après qu'une autre a été demandée est ignorée
+	private int loadId = 0;
+	private CompletableFuture<PeoplePage> pendingPage;
+	private Timer searchTimer;
+	
+	// Dernière première page reçue et son filtre : si elle était complète, un filtre plus long
+	// (ex. "ma" puis "mar") est appliqué directement à cette page, sans nouvelle requête
+	private String cachedFilter;
+	private PeoplePage cachedPage;
 
 	public PanelList(int width, int height) throws Exception {
 		super(width, height, true, "assets/images/background-log-menu.jpg");
@@ -69,6 +94,34 @@ public class PanelList extends CommonPanel {
 				PanelList.this.resetView();
 			}
 		});
+		
+		// Recherche pendant la frappe
+		searchTimer = new Timer(SEARCH_DELAY, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				search();
+			}
+		});
+		searchTimer.setRepeats(false);
+		
+		searchField.getDocument().addDocumentListener(new DocumentListener() {
+			
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+			
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+			
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+		});
 
 		this.addButton("Ajouter une entrée", 20, 510, 150, 25, new ActionListener() {
 
@@ -79,6 +132,24 @@ public class PanelList extends CommonPanel {
 		});
 		
 
+		previousButton = this.addButton("< Précédent", 450, 510, 120, 25, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				pageStarts.remove(pageStarts.size() - 1);
+				loadPage();
+			}
+		});
+		
+		nextButton = this.addButton("Suivant >", 590, 510, 120, 25, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				pageStarts.add(new String[] {currentPage.getLastName(), currentPage.getLastId()});
+				loadPage();
+			}
+		});
+
 		peopleList = new JList<String>();
 		peopleList.setFont(new Font("Courier New", 0, 18));
 		super.addField(new JScrollPane(peopleList), 20, 60, 830, 440);
@@ -103,10 +174,126 @@ public class PanelList extends CommonPanel {
 	 */
 	@Override
 	public void resetUI() {
+		// Les données ont pu changer depuis le dernier affichage
+		cachedFilter = null;
+		cachedPage = null;
+		search();
+	}
+	
+	/**
+	 * Le texte de recherche a changé : la page en mémoire est filtrée tout de suite si possible,
+	 * sinon la recherche est lancée lorsque l'utilisateur arrête de taper
+	 */
+	private void searchChanged() {
+		PeoplePage refined = refineCachedPage(searchField.getText());
+		
+		if (refined != null) {
+			searchTimer.stop();
+			pageStarts.clear();
+			pageStarts.add(null);
+			
+			// Une requête encore en cours ne doit pas remplacer ce résultat
+			loadId++;
+			cancelPendingPage();
+			showPage(refined);
+		}
+		else {
+			searchTimer.restart();
+		}
+	}
+	
+	private void search() {
+		searchTimer.stop();
+		pageStarts.clear();
+		pageStarts.add(null);
+		loadPage();
+	}
+	
+	/**
+	 * @return la première page pour ce filtre, obtenue de la page en mémoire, ou null s'il faut la demander
+	 */
+	private PeoplePage refineCachedPage(String filter) {
+		if (cachedPage == null || cachedPage.hasNextPage() || !normalize(filter).startsWith(normalize(cachedFilter))) {
+			return null;
+		}
+		
+		List<Person> refined = new ArrayList<Person>();
+		
+		for (Person p : cachedPage.getPeople()) {
+			if (p.getName() != null && normalize(p.getName()).startsWith(normalize(filter))) {
+				refined.add(p);
+			}
+		}
+		
+		return new PeoplePage(refined, false);
+	}
+	
+	/**
+	 * Même normalisation que la recherche par préfixe (voir NameIndex)
+	 */
+	private static String normalize(String text) {
+		return text == null ? "" : text.toLowerCase();
+	}
+	
+	/**
+	 * Abandonne la page demandée. Limite : cancel ne fait que retirer de la file une requête qui
+	 * n'a pas encore commencé ; une requête déjà en cours (Neo4j, puis les vignettes) va jusqu'au bout,
+	 * son résultat est seulement ignoré grâce à loadId. Le délai de recherche (SEARCH_DELAY) évite
+	 * d'en lancer une à chaque touche.
+	 */
+	private void cancelPendingPage() {
+		if (pendingPage != null) {
+			pendingPage.cancel(false);
+			pendingPage = null;
+		}
+	}
+	
+	private void loadPage() {
+		final int id = ++loadId;
+		cancelPendingPage();
+		
 		deleteButton.setVisible(false);
 		editButton.setVisible(false);
-		peopleList.removeAll();
-		people = Facade.getInstance().getPeopleList(searchField.getText(), true, 50);
+		previousButton.setEnabled(false);
+		nextButton.setEnabled(false);
+		
+		people = new ArrayList<Person>();
+		DefaultListModel<String> loading = new DefaultListModel<String>();
+		loading.addElement("Chargement...");
+		peopleList.setModel(loading);
+		peopleList.setEnabled(false);
+		
+		final String filter = searchField.getText();
+		final String[] start = pageStarts.get(pageStarts.size() - 1);
+		pendingPage = Facade.getInstance().getPeopleListAfterAsync(start != null ? start[0] : null, start != null ? start[1] : null, 
+				filter, ImageMode.THUMBNAIL, PAGE_SIZE);
+		pendingPage.whenComplete((page, error) -> {
+			SwingUtilities.invokeLater(() -> {
+				if (id != loadId) {
+					return;
+				}
+				
+				pendingPage = null;
+				
+				if (error != null) {
+					error.printStackTrace();
+					showPage(new PeoplePage(new ArrayList<Person>(), false));
+				}
+				else {
+					if (start == null) {
+						cachedFilter = filter;
+						cachedPage = page;
+					}
+					
+					showPage(page);
+				}
+			});
+		});
+	}
+	
+	private void showPage(PeoplePage page) {
+		currentPage = page;
+		people = currentPage.getPeople();
 
 		DefaultListModel<String> model = new DefaultListModel<String>();
 		
@@ -115,6 +302,9 @@ public class PanelList extends CommonPanel {
 		}
 		
 		peopleList.setModel(model);
+		peopleList.setEnabled(true);
+		previousButton.setEnabled(pageStarts.size() > 1);
+		nextButton.setEnabled(currentPage.hasNextPage());
 	}
 
 }
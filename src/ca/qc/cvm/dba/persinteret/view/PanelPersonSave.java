@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
@@ -37,11 +38,13 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.filechooser.FileFilter;
 
 import ca.qc.cvm.dba.persinteret.app.Facade;
+import ca.qc.cvm.dba.persinteret.app.ImageIngest;
 import ca.qc.cvm.dba.persinteret.entity.Person;
 import ca.qc.cvm.dba.persinteret.event.SaveEvent;
 import ca.qc.cvm.dba.persinteret.view.util.BackgroundPanel;
@@ -53,12 +56,15 @@ public class PanelPersonSave extends CommonPanel {
 	private JTextField dateOfBirthField;
 	private JComboBox<String> statusField;
 	private ImageIcon photoImg;
+	private byte[] photoData;
 	private JList<String> connections;
 	private JButton deleteConnectionBtn;
 	
 	private Person currentPerson;
 	private List<String> connectionNames;
 	private JLabel photoImage;
+	// Incrémenté à chaque photo demandée (choix d'un fichier, arrivée sur la page) : seule la dernière est affichée
+	private int photoRequest;
 
 	public PanelPersonSave(int width, int height) throws Exception {
 		super(width, height, true, "assets/images/background-log-add.jpg");
@@ -108,19 +114,25 @@ public class PanelPersonSave extends CommonPanel {
 		        int resultat = fileChooser.showSaveDialog(PanelPersonSave.this);
 
 	            if (resultat != JFileChooser.CANCEL_OPTION) {
-	            	try {
-	            		BufferedImage inputImage = ImageIO.read(fileChooser.getSelectedFile());
-	            		BufferedImage outputImage = new BufferedImage(250, 250, inputImage.getType());
-		                Graphics2D g2d = outputImage.createGraphics();
-		                g2d.drawImage(inputImage, 0, 0, 250, 250, null);
-		                g2d.dispose();
-		                
-		                
-		            	photoImg = new ImageIcon(outputImage);		            	
-		            	photoImage.setIcon(photoImg);
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
+	            	// Décodage, orientation et encodage hors du fil de Swing
+	            	final int request = ++photoRequest;
+	            	
+	            	ImageIngest.getDefault().ingestAsync(fileChooser.getSelectedFile()).whenComplete((data, error) -> {
+	            		SwingUtilities.invokeLater(() -> {
+	            			if (request != photoRequest) {
+	            				// Une autre photo a été choisie, ou la page a été quittée, entre temps
+	            				return;
+	            			}
+	            			
+	            			if (error != null) {
+	            				error.printStackTrace();
+	            				JOptionPane.showMessageDialog(PanelPersonSave.this, "Erreur : image illisible");
+	            			}
+	            			else {
+	            				showPhoto(data);
+	            			}
+	            		});
+	            	});
 	            }
 			}
 		});
@@ -166,52 +178,17 @@ public class PanelPersonSave extends CommonPanel {
 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				List<Person> person = Facade.getInstance().getPeopleList("", false, 100);
-				final Vector<String> vector = new Vector<String>();
-				
-				for (Person p : person) {
-					if (!connectionNames.contains(p.getName()) && (currentPerson == null || !p.getName().equals(currentPerson.getName()))) {
-						vector.add(p.getName());
-					}
-				}
-				
-				if (vector.size() > 0) {
-			        JButton btn = new JButton("Ajouter");
-			        btn.setSize(new Dimension(100, 20));
-			        final JComboBox jcd = new JComboBox(vector);
-			        final JDialog diag = new JDialog();
-			        
-			        btn.addActionListener(new ActionListener() {
-	
-						@Override
-						public void actionPerformed(ActionEvent e) {
-							connectionNames.add(jcd.getSelectedItem().toString());
-							vector.add(jcd.getSelectedItem().toString());
-							
-							updateConnectionList(connectionNames);
-							
-							diag.setVisible(false);
+				Facade.getInstance().getPeopleListAsync("", false, 100).whenComplete((people, error) -> {
+					SwingUtilities.invokeLater(() -> {
+						if (error != null) {
+							error.printStackTrace();
+							JOptionPane.showMessageDialog(PanelPersonSave.this, "Erreur : impossible de lire les personnes");
 						}
-			        });
-	
-			        Object[] options = new Object[] {};
-			        JOptionPane jop = new JOptionPane("",
-			                                        JOptionPane.QUESTION_MESSAGE,
-			                                        JOptionPane.DEFAULT_OPTION,
-			                                        null,options, null);
-			        jop.setLayout(new BorderLayout());
-			        jop.add(jcd, BorderLayout.NORTH);		        
-			        jop.add(btn, BorderLayout.SOUTH);
-			        
-	 
-			        diag.setLocationRelativeTo(PanelPersonSave.this);
-			        diag.getContentPane().add(jop);
-			        diag.pack();
-			        diag.setVisible(true);
-				}
-				else {
-					JOptionPane.showMessageDialog(PanelPersonSave.this, "Aucune nouvelle connexion disponible");
-				}
+						else {
+							chooseConnection(people);
+						}
+					});
+				});
 			}			
 		});
 		
@@ -235,7 +212,7 @@ public class PanelPersonSave extends CommonPanel {
 					errorMsg += "\n - Le nom ne peut pas être vide";
 				}
 				
-				if (photoImg == null) {
+				if (photoData == null) {
 					errorMsg += "\n - La photo ne peut pas être vide";
 				}
 				
@@ -251,21 +228,7 @@ public class PanelPersonSave extends CommonPanel {
 					p.setStatus(statusField.getSelectedItem().toString());
 					p.setDateOfBirth(dateOfBirthField.getText());
 					p.setConnexions(connectionNames);
-					
-					BufferedImage bi = new BufferedImage(photoImg.getIconWidth(),photoImg.getIconHeight(), BufferedImage.TYPE_INT_RGB);
-					Graphics g = bi.createGraphics();
-					photoImg.paintIcon(null, g, 0,0);
-					g.dispose();
-					
-				    try {
-				    	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				    	ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-				        ImageIO.write(bi, "png", ios);
-				        ios.close();
-				        p.setImageData(baos.toByteArray());
-				    } catch (Exception ee) {
-				    	ee.printStackTrace();
-				    }
+					p.setImageData(photoData);
 				    
 					Facade.getInstance().processEvent(new SaveEvent(p));
 				}
@@ -276,6 +239,79 @@ public class PanelPersonSave extends CommonPanel {
 		});
 	}
 	
+	/**
+	 * Propose les personnes qui ne sont pas encore des connexions
+	 * 
+	 * @param people personnes existantes
+	 */
+	private void chooseConnection(List<Person> people) {
+		final Vector<String> vector = new Vector<String>();
+		
+		for (Person p : people) {
+			if (!connectionNames.contains(p.getName()) && (currentPerson == null || !p.getName().equals(currentPerson.getName()))) {
+				vector.add(p.getName());
+			}
+		}
+		
+		if (vector.size() > 0) {
+	        JButton btn = new JButton("Ajouter");
+	        btn.setSize(new Dimension(100, 20));
+	        final JComboBox jcd = new JComboBox(vector);
+	        final JDialog diag = new JDialog();
+	        
+	        btn.addActionListener(new ActionListener() {
+	
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					connectionNames.add(jcd.getSelectedItem().toString());
+					vector.add(jcd.getSelectedItem().toString());
+					
+					updateConnectionList(connectionNames);
+					
+					diag.setVisible(false);
+				}
+	        });
+	
+	        Object[] options = new Object[] {};
+	        JOptionPane jop = new JOptionPane("",
+	                                        JOptionPane.QUESTION_MESSAGE,
+	                                        JOptionPane.DEFAULT_OPTION,
+	                                        null,options, null);
+	        jop.setLayout(new BorderLayout());
+	        jop.add(jcd, BorderLayout.NORTH);		        
+	        jop.add(btn, BorderLayout.SOUTH);
+	        
+	 
+	        diag.setLocationRelativeTo(PanelPersonSave.this);
+	        diag.getContentPane().add(jop);
+	        diag.pack();
+	        diag.setVisible(true);
+		}
+		else {
+			JOptionPane.showMessageDialog(PanelPersonSave.this, "Aucune nouvelle connexion disponible");
+		}
+	}
+	
+	/**
+	 * Affiche la photo (déjà préparée par ImageIngest) réduite à la taille du cadre
+	 * 
+	 * @param data photo encodée, null pour aucune photo
+	 */
+	private void showPhoto(byte[] data) {
+		photoData = data;
+		photoImage.setText("");
+		
+		if (data != null) {
+			photoImg = new ImageIcon(new ImageIcon(data).getImage().getScaledInstance(250, 250, Image.SCALE_SMOOTH));
+			photoImage.setIcon(photoImg);
+			photoImage.repaint();
+		}
+		else {
+			photoImg = null;
+			photoImage.setIcon(null);
+		}
+	}
+	
 	private void updateConnectionList(List<String> list) {		
 		DefaultListModel<String> model = new DefaultListModel<String>();
 		
@@ -303,15 +339,25 @@ public class PanelPersonSave extends CommonPanel {
 			codeNameField.setText(currentPerson.getCodeName());
 			dateOfBirthField.setText(currentPerson.getDateOfBirth());
 			
-			if (currentPerson.getImageData() != null) {
-				photoImg = new ImageIcon(currentPerson.getImageData());
-				photoImage.setIcon(photoImg);
-				photoImage.repaint();
-			}
-			else {
-				photoImg = null;
-				photoImage.setIcon(null);	
-			}
+			// La photo est lue hors du fil de Swing ; elle n'est affichée que si aucune autre n'a été demandée depuis
+			final int request = ++photoRequest;
+			showPhoto(null);
+			photoImage.setText("Chargement...");
+			
+			Facade.getInstance().getImageDataAsync(currentPerson).whenComplete((data, error) -> {
+				SwingUtilities.invokeLater(() -> {
+					if (request == photoRequest) {
+						photoImage.setText("");
+						
+						if (error != null) {
+							error.printStackTrace();
+						}
+						else {
+							showPhoto(data);
+						}
+					}
+				});
+			});
 			
 			if (currentPerson.getConnexions() != null) {
 				for (String c : currentPerson.getConnexions()) {
@@ -320,12 +366,12 @@ public class PanelPersonSave extends CommonPanel {
 			}
 		}
 		else {
+			photoRequest++;
 			statusField.setSelectedIndex(0);
 			nameField.setText("");
 			codeNameField.setText("");
 			dateOfBirthField.setText("YYYY-MM-DD");
-			photoImg = null;
-			photoImage.setIcon(null);
+			showPhoto(null);
 		}
 
 		updateConnectionList(connectionNames);